@@ -1,7 +1,13 @@
+import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.util.Locale;
 
 import controllers.AbstractController;
+import controllers.Secured;
+import controllers.Secured.HeaderCheck;
+import models.QueryCounter;
+import utils.CompressionFilter;
+import utils.LoginThrottle;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 
@@ -25,11 +31,19 @@ import static play.mvc.Results.*;
  * All forms have a hidden CSRF token that will be checked.
  * If an unwelcome attempt is made to get or post data, the response is "Invalid token found in form body".
  *
+ * Also gzips JSON, HTML, CSS and JavaScript responses for clients that accept it (see utils.CompressionFilter).
+ *
  * Also provides a formatter that works with the JodaDateTime annotation
  *   to ensure valid datetime values from JSON pass form validation.
  *
  * Provides a custom Application Error and Page Not Found pages, and handles invalid request parameters and JSON bodies.
  *
+ * Checks the username and password headers of JSON API requests on the credential pool before running the action,
+ *   and answers 429 (too many requests) instead if the check was throttled.
+ *
+ * Counts the DB queries each action runs (see models.QueryCounter), logs the count at debug level and, outside
+ *   production, returns it in the X-Query-Count header.
+ *
  * Date:        10/12/13
  * Time:        11:32
  *
@@ -40,11 +54,11 @@ public class Global extends GlobalSettings {
 
 
     /*
-     * Returns the CSRF filter.
+     * Returns the CSRF and compression filters.
      */
     @Override
     public <T extends EssentialFilter> Class<T>[] filters() {
-        return new Class[]{CSRFFilter.class};
+        return new Class[]{CSRFFilter.class, CompressionFilter.class};
     }
 
 
@@ -80,6 +94,60 @@ public class Global extends GlobalSettings {
     }
 
 
+    /*
+     * Wraps each action to count the DB queries it runs. Actions that need a logged-in user first have any username
+     * and password headers checked without blocking (see Secured.checkHeaders), and run when that's done unless
+     * the check was throttled.
+     */
+    @Override
+    public Action onRequest(Request request, final Method actionMethod) {
+        return new Action.Simple() {
+            public Promise<SimpleResult> call(final Context ctx) throws Throwable {
+                Promise<HeaderCheck> headersChecked = (isAuthenticated(actionMethod)) ? (Secured.checkHeaders(ctx))
+                                                                                      : (null);
+                if (headersChecked == null) {
+                    return callCounted(ctx);
+                }
+                return headersChecked.flatMap(new Function<HeaderCheck,Promise<SimpleResult>>() {
+                    public Promise<SimpleResult> apply(HeaderCheck check) throws Throwable {
+                        if (check == HeaderCheck.THROTTLED) {
+                            return Promise.<SimpleResult>pure(AbstractController.statusJson(
+                                    LoginThrottle.TOO_MANY_REQUESTS,
+                                    AbstractController.getErrorAsJson(controllers.Application.TOO_MANY_LOGINS_MSG),
+                                    ctx.request()));
+                        }
+                        return callCounted(ctx); // Secured rejects the request if the headers weren't valid
+                    }
+                });
+            }
+
+            private Promise<SimpleResult> callCounted(Context ctx) throws Throwable {
+                QueryCounter.start();
+                try {
+                    Promise<SimpleResult> result = delegate.call(ctx);
+                    int queries = QueryCounter.get();
+                    Logger.debug(ctx.request().method() + " " + ctx.request().uri() + ": " + queries + " queries");
+                    if (!Play.isProd()) {
+                        ctx.response().setHeader(QueryCounter.HEADER, String.valueOf(queries));
+                    }
+                    return result;
+                } finally {
+                    QueryCounter.stop();
+                }
+            }
+        };
+    }
+
+
+    /*
+     * Returns true if the action requires a logged-in user.
+     */
+    private static boolean isAuthenticated(Method actionMethod) {
+        return actionMethod.isAnnotationPresent(Security.Authenticated.class)
+               || actionMethod.getDeclaringClass().isAnnotationPresent(Security.Authenticated.class);
+    }
+
+
     /*
      * Return the custom application error page if an internal server error occurs.
      */
@@ -89,9 +157,9 @@ public class Global extends GlobalSettings {
             return Promise.<SimpleResult>pure(internalServerError(
                     views.html.applicationError.render(t)
             ));
-        } else if (request.accepts("application/json") || request.accepts("text/json")) {
-            return Promise.<SimpleResult>pure(internalServerError(
-                    AbstractController.getErrorAsJson(msg + ": " + t)
+        } else if (AbstractController.acceptsJson(request)) {
+            return Promise.<SimpleResult>pure(AbstractController.statusJson(Http.Status.INTERNAL_SERVER_ERROR,
+                    AbstractController.getErrorAsJson(msg + ": " + t), request
             ));
         } else {
             return Promise.<SimpleResult>pure(badRequest(msg));
@@ -108,9 +176,9 @@ public class Global extends GlobalSettings {
             return Promise.<SimpleResult>pure(notFound(
                     views.html.pageNotFound.render(request.uri())
             ));
-        } else if (request.accepts("application/json") || request.accepts("text/json")) {
-            return Promise.<SimpleResult>pure(notFound(
-                    AbstractController.getErrorAsJson(msg + ": " + request.uri())
+        } else if (AbstractController.acceptsJson(request)) {
+            return Promise.<SimpleResult>pure(AbstractController.statusJson(Http.Status.NOT_FOUND,
+                    AbstractController.getErrorAsJson(msg + ": " + request.uri()), request
             ));
         } else {
             return Promise.<SimpleResult>pure(badRequest(msg));
@@ -127,9 +195,9 @@ public class Global extends GlobalSettings {
             return Promise.<SimpleResult>pure(notFound(
                     views.html.pageNotFound.render(request.uri() + ". ")
             ));
-        } else if (request.accepts("application/json") || request.accepts("text/json")) {
-            return Promise.<SimpleResult>pure(badRequest(
-                    AbstractController.getErrorAsJson(msg + ". Please send a valid JSON body.")
+        } else if (AbstractController.acceptsJson(request)) {
+            return Promise.<SimpleResult>pure(AbstractController.statusJson(Http.Status.BAD_REQUEST,
+                    AbstractController.getErrorAsJson(msg + ". Please send a valid JSON body."), request
             ));
         } else {
             return Promise.<SimpleResult>pure(badRequest(msg));
@@ -1,13 +1,18 @@
 package controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.User;
 import play.data.Form;
 import play.data.validation.ValidationError;
 import play.libs.Json;
 import play.mvc.*;
+import utils.CompressionFilter;
+import utils.JsonEncoding;
 import utils.Utils;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.*;
 
 /**
@@ -24,15 +29,18 @@ public abstract class AbstractController extends Controller {
     // Constants
     public static final int PAGE_TYPE_LIST = 1;
     public static final int PAGE_TYPE_EDIT = 2;
+    public static final int MAX_LIMIT      = 100; // Most rows in a page of JSON
 
 
     /**
-     * Returns the logged-in user.
+     * Returns the logged-in user from the request's principal.
+     * The user's roles are already loaded, so role checks on the returned user don't query the DB.
      *
      * @return User  The logged-in user.
      */
     static User getLoggedInUser() {
-        return User.find.where().eq("username", request().username()).findUnique();
+        Principal principal = Principal.current();
+        return (principal == null) ? (null) : (principal.user);
     }
 
 
@@ -56,11 +64,11 @@ public abstract class AbstractController extends Controller {
     static Result getAjaxResponse(String result) {
         if (request().accepts("text/html")) {
             return ok(result);
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
+        } else if (acceptsJson()) {
             if (result.startsWith("ERROR")) {
-                return ok(getErrorAsJson(result));
+                return okJson(getErrorAsJson(result));
             } else {
-                return ok(getSuccessAsJson(result));
+                return okJson(getSuccessAsJson(result));
             }
         } else {
             return badRequest();
@@ -68,6 +76,111 @@ public abstract class AbstractController extends Controller {
     }
 
 
+    /**
+     * Returns true if the request accepts JSON, as text or as Smile (binary JSON).
+     *
+     * @return boolean  True if JSON is accepted.
+     */
+    static boolean acceptsJson() {
+        return acceptsJson(request());
+    }
+
+
+    /**
+     * Returns true if a request accepts JSON, as text or as Smile. Also used outside actions (e.g. by Global's error
+     * handlers), where there's no current request.
+     *
+     * @param request   The request.
+     * @return boolean  True if JSON is accepted.
+     */
+    public static boolean acceptsJson(Http.RequestHeader request) {
+        return request.accepts("application/json") || request.accepts("text/json")
+               || JsonEncoding.prefersSmile(request.getHeader(ACCEPT));
+    }
+
+
+    /**
+     * Returns true if the request's Accept header prefers Smile (see JsonEncoding.prefersSmile), in which case JSON
+     * responses are sent as Smile.
+     *
+     * @return boolean  True if Smile is preferred.
+     */
+    static boolean acceptsSmile() {
+        return JsonEncoding.prefersSmile(request().getHeader(ACCEPT));
+    }
+
+
+    /**
+     * Returns JSON as text or, if the request prefers it, as Smile. Either way the response varies by Accept.
+     *
+     * @param json     The JSON.
+     * @return Result  The result.
+     */
+    static Result okJson(JsonNode json) {
+        varyByAccept();
+        if (acceptsSmile()) {
+            response().setContentType(JsonEncoding.SMILE);
+            return ok(JsonEncoding.toSmile(json));
+        }
+        return ok(json);
+    }
+
+
+    /**
+     * Sets the response's Vary header to Accept, unless isNotModified has set it to include Accept-Encoding as well.
+     */
+    private static void varyByAccept() {
+        if (!response().getHeaders().containsKey(VARY)) {
+            response().setHeader(VARY, ACCEPT);
+        }
+    }
+
+
+    /**
+     * Returns JSON with an HTTP status (e.g. an error), as text or, if the request prefers it, as Smile.
+     * The response varies by Accept.
+     *
+     * @param status   The HTTP status.
+     * @param json     The JSON.
+     * @return Result  The result.
+     */
+    static Result statusJson(int status, JsonNode json) {
+        varyByAccept();
+        return statusJson(status, json, request());
+    }
+
+
+    /**
+     * Returns JSON with an HTTP status, as text or, if a request prefers it, as Smile. Also used outside actions
+     * (e.g. by Global's error handlers).
+     *
+     * @param status          The HTTP status.
+     * @param json            The JSON.
+     * @param request         The request.
+     * @return Results.Status The result.
+     */
+    public static Results.Status statusJson(int status, JsonNode json, Http.RequestHeader request) {
+        if (JsonEncoding.prefersSmile(request.getHeader(ACCEPT))) {
+            return status(status, JsonEncoding.toSmile(json)).as(JsonEncoding.SMILE);
+        }
+        return status(status, json);
+    }
+
+
+    /**
+     * Returns JSON already encoded (e.g. joined from AnalystJsonCache), as text or Smile. The response varies by Accept.
+     *
+     * @param body     The JSON as UTF-8 or Smile.
+     * @param smile    True if the body is Smile (see acceptsSmile).
+     * @return Result  The result.
+     */
+    static Result okJson(byte[] body, boolean smile) {
+        varyByAccept();
+        response().setContentType((smile) ? (JsonEncoding.SMILE) : (JsonEncoding.JSON));
+        return ok(body);
+    }
+
+
     /**
      * Gets the form validation errors as JSON with a key of "error", for example, { "error": "password required" }.
      * Using the form's standard errorAsJson method sets the key to the field in error.
@@ -128,6 +241,97 @@ public abstract class AbstractController extends Controller {
     }
 
 
+    /**
+     * Gets the number of rows wanted in a page of JSON from the query string's limit.
+     *
+     * @return int  The limit (RECORDS_PER_PAGE if not given, at most MAX_LIMIT).
+     */
+    static int getLimit() {
+        String limit = request().getQueryString("limit");
+        if (limit == null) {
+            return Application.RECORDS_PER_PAGE;
+        }
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(limit), MAX_LIMIT));
+        } catch (NumberFormatException e) {
+            return Application.RECORDS_PER_PAGE;
+        }
+    }
+
+
+    /**
+     * Returns true if the query string asks for the total row count (count=true), which JSON pages leave out otherwise.
+     *
+     * @return boolean  True if the count is wanted.
+     */
+    static boolean isCountRequested() {
+        return "true".equalsIgnoreCase(request().getQueryString("count"));
+    }
+
+
+    /**
+     * Sets the response's ETag from the version of its content and returns true if the request's If-None-Match
+     * already has it, in which case the action returns notModified() without building the body.
+     * Smile responses have their own ETag, as they're a different representation of the content, and so do
+     * responses that may be gzipped (see utils.CompressionFilter.mayCompress), so the strong ETag always covers
+     * the same bytes.
+     *
+     * @param version   The version of the response's content (see models.EntityVersions).
+     * @return boolean  True if the client's copy is current.
+     */
+    static boolean isNotModified(String version) {
+        boolean smile = acceptsSmile();
+        boolean gzip = CompressionFilter.mayCompress((smile) ? (JsonEncoding.SMILE) : (JsonEncoding.JSON),
+                                                     request().getHeader(ACCEPT_ENCODING));
+        String etag = "\"" + version + ((smile) ? ("-smile") : ("")) + ((gzip) ? ("-gzip") : ("")) + "\"";
+        response().setHeader(ETAG, etag);
+        response().setHeader(VARY, ACCEPT + ", " + ACCEPT_ENCODING);
+        String match = request().getHeader(IF_NONE_MATCH);
+        if (match == null) {
+            return false;
+        }
+        for (String tag : match.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) { // If-None-Match uses the weak comparison
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns a 304 Not Modified result, whose ETag has been set by isNotModified.
+     *
+     * @return Result  The result.
+     */
+    static Result notModified() {
+        return status(NOT_MODIFIED);
+    }
+
+
+    /**
+     * Adds a parameter to a URL if it has a value. The value is URL encoded, as it may come from the request.
+     *
+     * @param url    The URL.
+     * @param name   The parameter name.
+     * @param value  The parameter value (left out if null).
+     */
+    static void appendParam(StringBuilder url, String name, Object value) {
+        if (value != null) {
+            try {
+                url.append((url.indexOf("?") < 0) ? ("?") : ("&")).append(name).append("=")
+                   .append(URLEncoder.encode(String.valueOf(value), "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 isn't supported", e); // Every JVM supports UTF-8
+            }
+        }
+    }
+
+
     /**
      * Gets the error message as JSON.
      *
@@ -1,19 +1,35 @@
 package controllers;
 
-import com.avaje.ebean.Page;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.Analyst;
+import models.AnalystFacets;
+import models.AnalystFieldPolicy;
+import models.AnalystIndex;
+import models.AnalystJsonCache;
+import models.AnalystListCache;
+import models.AnalystQuery;
 import models.Desk;
+import models.EntityVersions;
 import models.Note;
 import models.Rank;
 import models.User;
 import models.S3File;
 import play.data.Form;
+import play.libs.Json;
 
 import play.mvc.*;
 import views.html.Analysts.*;
+import utils.JsonChunks;
+import utils.JsonEncoding;
+import utils.KeysetCursor;
+import utils.ListPage;
 import utils.Utils;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import org.joda.time.DateTime;
 
@@ -30,31 +46,274 @@ import org.joda.time.DateTime;
 @Security.Authenticated(Secured.class) // All methods will require the user to be logged in
 public class Analysts extends AbstractController {
 
+    // Constants
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int STREAM_BATCH_SIZE = 100; // Analysts read per chunk of a stream
+
+
     /**
      * Displays a paginated list of analysts.
+     * Pages are fetched by page number unless a cursor is given, when keyset pagination is used instead.
+     * A profile query searches the analysts' profile text instead, most relevant first.
+     * The list can also be narrowed by status (st), rank (r), email verified (ev), phone verified (pv) and
+     * contract signed (cs), read from the query string; all the criteria are combined.
      *
      * @param page          Current page number (starts from 0).
      * @param sortBy        Column to be sorted.
      * @param order         Sort order (either asc or desc).
      * @param filter        Filter applied on primary desk name.
-     * @param search        Search applied on last name.
-     * @return Result  The list page or all analysts as JSON.
+     * @param search        Search applied on first and last names.
+     * @param cursor        Keyset cursor ("start" for the first page), or empty to page by number.
+     * @param query         Full-text query on the profile text, or empty.
+     * @return Result  The list page, or a page of analysts as JSON with links to the pages either side and facet counts.
+     *                 The JSON page size is the query string's limit and the total is included if count=true;
+     *                 all=true streams every analyst instead. JSON analysts have the fields named by fields=
+     *                 (default: all but the LOB fields and relationships) plus those named by include=.
      */
-    public static Result list(int page, String sortBy, String order, String filter, String search) {
+    public static Result list(int page, String sortBy, String order, String filter, String search, String cursor,
+                              String query) {
+        sortBy = Analyst.checkSortBy(sortBy);
+        order = Analyst.checkOrder(order);
+        AnalystQuery criteria = getCriteria(filter, search, query);
 
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             // Get a page of analysts and render the list page
-            Page<Analyst> pageAnalysts = Analyst.page(page, Application.RECORDS_PER_PAGE, sortBy, order, filter, search);
-            return ok(listAnalysts.render(pageAnalysts, sortBy, order, filter, search, getLoggedInUser()));
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(Analyst.getAllAsJson(getLoggedInUser()));
+            ListPage<Analyst> pageAnalysts = getPage(page, Application.RECORDS_PER_PAGE, sortBy, order, cursor,
+                                                     criteria, true, AnalystFieldPolicy.LIST);
+            AnalystFacets facets = AnalystFacets.compute(criteria);
+            return ok(listAnalysts.render(pageAnalysts, facets, sortBy, order, filter, search, query, criteria,
+                                          getLoggedInUser()));
+        } else if (acceptsJson()) {
+            // Include the number of analysts per desk, status and rank
+            final ObjectNode facets = AnalystFacets.compute(criteria).toJson();
+            final AnalystFieldPolicy.Tier tier = AnalystFieldPolicy.Tier.of(getLoggedInUser()); // Resolve roles once
+            final long fields = getFields(tier, AnalystFieldPolicy.SUMMARY);
+            if ("true".equalsIgnoreCase(request().getQueryString("all"))) {
+                // Stream all analysts a batch at a time, as the client takes them
+                // (the tier and fields are resolved now as the request has gone when they're written)
+                JsonChunks chunks = new JsonChunks(acceptsSmile()) {
+                    private String cursor = KeysetCursor.START;
+                    private boolean started;
+                    protected boolean writeNext(JsonGenerator generator, OutputStream out) throws IOException {
+                        if (!started) {
+                            started = true;
+                            generator.writeStartObject();
+                            generator.writeArrayFieldStart("analysts");
+                        }
+                        cursor = Analyst.writeJsonBatch(generator, out, cursor, STREAM_BATCH_SIZE, tier, fields);
+                        if (cursor != null) {
+                            return true;
+                        }
+                        generator.writeEndArray();
+                        generator.writeObjectField("facets", facets);
+                        generator.writeEndObject();
+                        return false;
+                    }
+                };
+                response().setContentType(chunks.getContentType());
+                response().setHeader(VARY, ACCEPT);
+                return chunks.toResult();
+            }
+
+            // Otherwise a page, by cursor from the start of the list unless a page number or profile query is given
+            int limit = getLimit();
+            boolean count = isCountRequested();
+            if (cursor.isEmpty() && page == 0 && query.isEmpty()) {
+                cursor = KeysetCursor.START;
+            }
+            long read = AnalystJsonCache.getVersion(); // Before the page is read
+            ListPage<Analyst> pageAnalysts = getPage(page, limit, sortBy, order, cursor, criteria, count, fields);
+            ObjectNode others = Json.newObject();
+            String prev = getPageLink(pageAnalysts, false, sortBy, order, filter, search, query, limit, count);
+            String next = getPageLink(pageAnalysts, true, sortBy, order, filter, search, query, limit, count);
+            if (prev != null) {
+                others.put("prev", prev);
+            }
+            if (next != null) {
+                others.put("next", next);
+            }
+            others.put("facets", facets);
+            boolean smile = acceptsSmile();
+            return okJson(Analyst.getPageAsJson(pageAnalysts, count, tier, fields, others, smile, read), smile);
         } else {
             return badRequest();
         }
     }
 
 
+    /**
+     * Gets a page of analysts: profile search results if there's a query, otherwise a keyset page if there's a cursor,
+     * otherwise a page by number. Pages are cached until the analysts change (see AnalystListCache).
+     *
+     * @param page          Current page number (starts from 0).
+     * @param pageSize      Number of analysts per page.
+     * @param sortBy        Column to be sorted.
+     * @param order         Sort order (either asc or desc).
+     * @param cursor        Keyset cursor, or empty.
+     * @param criteria      The list criteria.
+     * @param count         True if the total is needed (pages by number and profile searches are always counted).
+     * @param fields        The fields to load (see AnalystFieldPolicy).
+     * @return ListPage<Analyst>  The page of analysts.
+     */
+    private static ListPage<Analyst> getPage(int page, int pageSize, String sortBy, String order, String cursor,
+                                             AnalystQuery criteria, boolean count, long fields) {
+        // Serve repeated views from the cache, which is invalidated by any write to the analysts
+        String key = AnalystListCache.key(page, pageSize, sortBy, order, cursor, count, criteria, fields);
+        ListPage<Analyst> result = AnalystListCache.get(key);
+        if (result == null) {
+            if (!criteria.query.isEmpty()) {
+                result = Analyst.searchProfiles(criteria, page, pageSize, fields);
+            } else if (!cursor.isEmpty()) {
+                result = Analyst.seek(cursor, pageSize, sortBy, order, criteria, count, fields);
+            } else {
+                result = Analyst.page(page, pageSize, sortBy, order, criteria, fields);
+            }
+            AnalystListCache.put(key, result);
+        }
+        return result;
+    }
+
+
+    /**
+     * Gets the link to the page before or after a page of analysts as JSON, keeping the criteria, limit, count and
+     * fieldset.
+     *
+     * @param page          The page of analysts.
+     * @param next          True for the next page, false for the previous page.
+     * @param sortBy        Column to be sorted.
+     * @param order         Sort order (either asc or desc).
+     * @param filter        Filter applied on primary desk name.
+     * @param search        Search applied on first and last names.
+     * @param query         Full-text query on the profile text.
+     * @param limit         Number of analysts per page.
+     * @param count         True if the total is wanted.
+     * @return String  The link, or null if there's no such page.
+     */
+    private static String getPageLink(ListPage<Analyst> page, boolean next, String sortBy, String order, String filter,
+                                      String search, String query, int limit, boolean count) {
+        if (!((next) ? (page.hasNext()) : (page.hasPrev()))) {
+            return null;
+        }
+        String url;
+        if (page.isKeyset()) {
+            String cursor = (next) ? (page.getNextCursor()) : (page.getPrevCursor());
+            if (cursor == null) {
+                return null;
+            }
+            url = routes.Analysts.list(0, sortBy, order, filter, search, cursor, query).url();
+        } else {
+            int pageIndex = page.getPageIndex() + ((next) ? (1) : (-1));
+            url = routes.Analysts.list(pageIndex, sortBy, order, filter, search, "", query).url();
+        }
+        StringBuilder link = new StringBuilder(appendCriteria(url));
+        appendParam(link, "limit", limit);
+        appendParam(link, "count", (count) ? (Boolean.TRUE) : (null));
+        appendParam(link, "fields", request().getQueryString("fields"));
+        appendParam(link, "include", request().getQueryString("include"));
+        return link.toString();
+    }
+
+
+    /**
+     * Gets the fieldset requested by the query string's fields and include parameters (see AnalystFieldPolicy.parse).
+     *
+     * @param tier      The logged-in user's tier.
+     * @param defaults  The fieldset used when no fields are named.
+     * @return long     The fieldset.
+     */
+    private static long getFields(AnalystFieldPolicy.Tier tier, long defaults) {
+        return AnalystFieldPolicy.parse(tier, request().getQueryString("fields"), request().getQueryString("include"),
+                                        defaults);
+    }
+
+
+    /**
+     * Gets the list criteria from the route parameters and the query string.
+     *
+     * @param filter        Filter applied on primary desk name.
+     * @param search        Search applied on first and last names.
+     * @param query         Full-text query on the profile text.
+     * @return AnalystQuery  The list criteria.
+     */
+    private static AnalystQuery getCriteria(String filter, String search, String query) {
+        return new AnalystQuery(filter, search, query, getIdParam("st"), getIdParam("r"),
+                                getFlagParam("ev"), getFlagParam("pv"), getFlagParam("cs"));
+    }
+
+
+    /**
+     * Adds the current request's status, rank and flag criteria to a list URL, so links keep them.
+     *
+     * @param url       The list URL.
+     * @return String   The URL with the criteria.
+     */
+    public static String appendCriteria(String url) {
+        AnalystQuery criteria = getCriteria("", "", "");
+        StringBuilder result = new StringBuilder(url);
+        appendParam(result, "st", criteria.statusId);
+        appendParam(result, "r", criteria.rankId);
+        appendParam(result, "ev", criteria.emailVerified);
+        appendParam(result, "pv", criteria.phoneVerified);
+        appendParam(result, "cs", criteria.contractSigned);
+        return result.toString();
+    }
+
+
+    /**
+     * Gets an id from the query string.
+     *
+     * @param name   The parameter name.
+     * @return Long  The id, or null if missing or not a number.
+     */
+    private static Long getIdParam(String name) {
+        String value = request().getQueryString(name);
+        try {
+            return (value == null || value.isEmpty()) ? (null) : (Long.valueOf(value));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * Gets a true/false flag from the query string.
+     *
+     * @param name      The parameter name.
+     * @return Boolean  The flag, or null if missing or neither true nor false.
+     */
+    private static Boolean getFlagParam(String name) {
+        String value = request().getQueryString(name);
+        if ("true".equalsIgnoreCase(value)) {
+            return Boolean.TRUE;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return Boolean.FALSE;
+        } else {
+            return null;
+        }
+    }
+
+
+    /**
+     * Returns analysts whose first name, last name or full name starts with the text typed so far, for type-ahead.
+     * Served from the in-memory prefix index, so it's cheap enough to call on every keystroke.
+     *
+     * @param prefix  The text typed so far.
+     * @param limit   The maximum number of suggestions (at most MAX_SUGGESTIONS).
+     * @return Result  The suggestions as JSON: analyst id, full name and primary desk.
+     */
+    public static Result autocomplete(String prefix, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_SUGGESTIONS));
+        ObjectNode result = Json.newObject();
+        ArrayNode suggestionNodes = result.arrayNode();
+        for (AnalystIndex.Suggestion suggestion : AnalystIndex.suggest(prefix, limit)) {
+            suggestionNodes.add(suggestion.toJson());
+        }
+        result.put("suggestions", suggestionNodes);
+        return okJson(result);
+    }
+
+
     /**
      * Creates a new analyst.
      *
@@ -69,29 +328,49 @@ public class Analysts extends AbstractController {
      * Displays a form to create a new or edit an existing analyst.
      *
      * @param id  Id of the analyst to edit.
-     * @return Result  The edit page or the analyst as JSON.
+     * @return Result  The edit page or the analyst as JSON (with every field unless fields= or include= are given).
+     *                 304 Not Modified if the client's copy, by ETag, is current.
      */
     public static Result edit(Long id) {
 
+        // The JSON is limited to the fields asked for, which are the only ones loaded
+        boolean html = request().accepts("text/html");
+        AnalystFieldPolicy.Tier tier = AnalystFieldPolicy.Tier.of(getLoggedInUser());
+        long fields = getFields(tier, AnalystFieldPolicy.ALL);
+
+        // Answer a JSON request for an analyst the client already has from its version, before loading it
+        if (!html && id > 0L) {
+            String version = getAnalystVersion("a", id);
+            if (version == null) {
+                return noAnalyst(id);
+            }
+            if (isNotModified(version + "." + tier.ordinal() + "." + Long.toString(fields, 36))) {
+                return notModified();
+            }
+        }
+
         // New analysts have id 0 and don't exist
         Form<Analyst> analystForm;
         Analyst analyst;
+        long read = AnalystJsonCache.getVersion(); // Before the analyst is read
         if (id <= 0L) {
             analyst = new Analyst();
         } else {
             // Check analyst exists and return if not
-            analyst = Analyst.find.byId(id);
+            analyst = (html) ? (Analyst.find.byId(id)) : (Analyst.findById(id, fields));
             if (analyst == null) {
                 return noAnalyst(id);
             }
         }
-        analystForm = Form.form(Analyst.class).fill(analyst);
 
         // Return data in HTML or JSON as requested
-        if (request().accepts("text/html")) {
+        if (html) {
+            analystForm = Form.form(Analyst.class).fill(analyst);
             return ok(editAnalyst.render(((id<0)?(0L):(id)), analystForm, getLoggedInUser()));
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(analyst.toJson(getLoggedInUser()));
+        } else if (acceptsJson()) {
+            boolean smile = acceptsSmile();
+            byte[] json = AnalystJsonCache.get(analyst, tier, fields, smile, read);
+            return okJson((smile) ? (JsonEncoding.toSmileDocument(json)) : (json), smile);
         } else {
             return badRequest();
         }
@@ -107,15 +386,29 @@ public class Analysts extends AbstractController {
     private static Result noAnalyst(Long id) {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
-            return list(0, "lastname", "asc", "", "");
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getErrorAsJson("Analyst: " + id + " does not exist."));
+            return list(0, "lastname", "asc", "", "", "", "");
+        } else if (acceptsJson()) {
+            return okJson(getErrorAsJson("Analyst: " + id + " does not exist."));
         } else {
             return badRequest();
         }
     }
 
 
+    /**
+     * Returns the version of an analyst's JSON, from which its ETag is made: the analyst's version (which changes with
+     * its desks and notes) and the version of the reference data and users it includes.
+     *
+     * @param  prefix  Identifies the response (e.g. "an" for the analyst's notes).
+     * @param  id      Id of the analyst.
+     * @return String  The version, or null if the analyst doesn't exist.
+     */
+    private static String getAnalystVersion(String prefix, Long id) {
+        Long version = Analyst.getVersion(id);
+        return (version == null) ? (null) : (prefix + id + "." + version + "." + EntityVersions.getReferenceVersion());
+    }
+
+
     /**
      * Updates the analyst from the form.
      *
@@ -132,8 +425,8 @@ public class Analysts extends AbstractController {
                 // Return data in HTML or JSON as requested
                 if (request().accepts("text/html")) {
                     return badRequest(editAnalyst.render(id, analystForm, loggedInUser)); // Return to the editAnalyst page
-                } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                    return ok(getErrorsAsJson(analystForm));
+                } else if (acceptsJson()) {
+                    return okJson(getErrorsAsJson(analystForm));
                 } else {
                     return badRequest();
                 }
@@ -152,7 +445,7 @@ public class Analysts extends AbstractController {
 
                     // Check id supplied by the form is the same as the id parameter (only possible via JSON)
                     if (!newAnalyst.analystId.equals(id)) {
-                        return ok(getErrorAsJson("Analyst id in the data (" + newAnalyst.analystId + ") " +
+                        return okJson(getErrorAsJson("Analyst id in the data (" + newAnalyst.analystId + ") " +
                                                  "does not match the analyst id in the URL (" + id + ")."));
                     }
 
@@ -180,38 +473,12 @@ public class Analysts extends AbstractController {
 
                     // Updating from JSON. The following fields are invisible or disabled, so ignore the form values
                     } else {
-                        // If the logged-in user is not an admin user or manager,
-                        //     phone and emailAlternate are invisible.
-                        if (!loggedInUser.isAdminOrManager()) {
-                            newAnalyst.phone            = existingAnalyst.phone;
-                            newAnalyst.emailAlternate   = existingAnalyst.emailAlternate;
-
-                            // If the logged-in user is not an admin user, manager or staff,
-                            //     paypalAccountEmail and all address fields are invisible;
-                            //     rank, emailverified, phoneVerified, contractSigned and wikiUsername are disabled;
-                            //     status values "Deleted" and those starting with "Removed" are removed from the list.
-                            if (!loggedInUser.isStaff()) {
-                                newAnalyst.paypalAccountEmail   = existingAnalyst.paypalAccountEmail;
-                                newAnalyst.address1             = existingAnalyst.address1;
-                                newAnalyst.address2             = existingAnalyst.address2;
-                                newAnalyst.city                 = existingAnalyst.city;
-                                newAnalyst.state                = existingAnalyst.state;
-                                newAnalyst.zip                  = existingAnalyst.zip;
-                                newAnalyst.country              = existingAnalyst.country;
-                                newAnalyst.countryOfResidence   = existingAnalyst.countryOfResidence;
-                                newAnalyst.rank                 = existingAnalyst.rank;
-                                newAnalyst.emailverified        = existingAnalyst.emailverified;
-                                newAnalyst.phoneVerified        = existingAnalyst.phoneVerified;
-                                newAnalyst.contractSigned       = existingAnalyst.contractSigned;
-                                newAnalyst.wikiUsername         = existingAnalyst.wikiUsername;
-                                // Don't change the status if the supplied status is deleted or removed
-                                // Don't allow an existing status of deleted or removed to be changed
-                                if (newAnalyst.status.isDeletedOrRemoved() ||
-                                    existingAnalyst.status.isDeletedOrRemoved()) {
-                                    newAnalyst.status = existingAnalyst.status;
-                                }
-                            }
-                        }
+                        // Restore the fields the logged-in user can't see or edit (see AnalystFieldPolicy):
+                        //     phone and emailAlternate for users other than admin users and managers;
+                        //     also paypalAccountEmail, address fields, rank, emailverified, phoneVerified,
+                        //     contractSigned and wikiUsername for users who aren't staff either, who also
+                        //     can't set or change a status of "Deleted" or starting with "Removed".
+                        AnalystFieldPolicy.merge(AnalystFieldPolicy.Tier.of(loggedInUser), existingAnalyst, newAnalyst);
                     }
 
                     // Check if the status has changed and, if so, do some processing (yet to be defined)
@@ -243,7 +510,7 @@ public class Analysts extends AbstractController {
                 // Show a message and return to the editAnalyst page
                 showSaveError(e); // Method in AbstractController
                 return badRequest(editAnalyst.render(id, analystForm, loggedInUser));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
+            } else if (acceptsJson()) {
                 String msg;
                 if (id == 0) {
                     msg = "Analyst not created.";
@@ -251,7 +518,7 @@ public class Analysts extends AbstractController {
                     msg = "Analyst: " + id + " not updated.";
                 }
                 msg += " Error: " + e.getMessage();
-                return ok(getErrorAsJson(msg));
+                return okJson(getErrorAsJson(msg));
             } else {
                 return badRequest();
             }
@@ -273,14 +540,14 @@ public class Analysts extends AbstractController {
             // Go to the list or edit page
             switch (pageType) {
                 case PAGE_TYPE_LIST: // Redirect to remove the analyst from the query string
-                    return redirect(controllers.routes.Analysts.list(0, "lastname", "asc", "", ""));
+                    return redirect(controllers.routes.Analysts.list(0, "lastname", "asc", "", "", "", ""));
                 case PAGE_TYPE_EDIT:
                     return redirect(controllers.routes.Analysts.edit(id));
                 default:
                     return null;
             }
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getSuccessAsJson(msg));
+        } else if (acceptsJson()) {
+            return okJson(getSuccessAsJson(msg));
         } else {
             return badRequest();
         }
@@ -331,9 +598,9 @@ public class Analysts extends AbstractController {
             // Return data in HTML or JSON as requested
             if (request().accepts("text/html")) {
                 showSaveError(e);
-                return redirect(controllers.routes.Analysts.list(0, "lastname", "asc", "", ""));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(getErrorAsJson(msg));
+                return redirect(controllers.routes.Analysts.list(0, "lastname", "asc", "", "", "", ""));
+            } else if (acceptsJson()) {
+                return okJson(getErrorAsJson(msg));
             } else {
                 return badRequest();
             }
@@ -352,11 +619,11 @@ public class Analysts extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return ok(tagAnalystImage.render(analyst)); // This template handles null analysts
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
+        } else if (acceptsJson()) {
             if (analyst == null) {
                 return noAnalyst(id);
             }
-            return ok(analyst.getProfileImageAsJson());
+            return okJson(analyst.getProfileImageAsJson());
         } else {
             return badRequest();
         }
@@ -374,11 +641,11 @@ public class Analysts extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return ok(tagAnalystCV.render(analyst)); // This template handles null analysts
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
+        } else if (acceptsJson()) {
             if (analyst == null) {
                 return noAnalyst(id);
             }
-            return ok(analyst.getCvDocumentAsJson());
+            return okJson(analyst.getCvDocumentAsJson());
         } else {
             return badRequest();
         }
@@ -459,7 +726,7 @@ public class Analysts extends AbstractController {
             }
 
             // JSON requests may not have a form
-            if (!hasForm && (request().accepts("application/json") || request().accepts("text/json"))) {
+            if (!hasForm && acceptsJson()) {
                 file = request().body().asRaw().asFile();
                 // Raw files don't have the correct file name and content type
                 if (fileType.equals("profile")) {
@@ -540,18 +807,26 @@ public class Analysts extends AbstractController {
      * Displays a (usually embedded) form to display the desks an analyst is assigned to.
      *
      * @param id  Id of the analyst.
-     * @return Result  The desks template or JSON.
+     * @return Result  The desks template or JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result editDesks(Long id) {
-        Analyst analyst = Analyst.find.byId(id);
+        long fields = AnalystFieldPolicy.mask(AnalystFieldPolicy.Field.DESKS);
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
-            return ok(tagListDeskAnalysts.render(analyst)); // This template handles null analysts
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
+            return ok(tagListDeskAnalysts.render(Analyst.findById(id, fields))); // This template handles null analysts
+        } else if (acceptsJson()) {
+            String version = getAnalystVersion("ad", id);
+            if (version == null) {
+                return noAnalyst(id);
+            }
+            if (isNotModified(version)) {
+                return notModified();
+            }
+            Analyst analyst = Analyst.findById(id, fields);
             if (analyst == null) {
                 return noAnalyst(id);
             }
-            return ok(analyst.getDesksAsJson());
+            return okJson(analyst.getDesksAsJson());
         } else {
             return badRequest();
         }
@@ -640,18 +915,26 @@ public class Analysts extends AbstractController {
      * Displays a (usually embedded) form to display the notes that have been written about an analyst.
      *
      * @param id  Id of the analyst.
-     * @return Result  The notes template or JSON.
+     * @return Result  The notes template or JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result editNotes(Long id) {
-        Analyst analyst = Analyst.find.byId(id);
+        long fields = AnalystFieldPolicy.mask(AnalystFieldPolicy.Field.NOTE_LIST);
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
-            return ok(tagListNotes.render(analyst)); // This template handles null analysts
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
+            return ok(tagListNotes.render(Analyst.findById(id, fields))); // This template handles null analysts
+        } else if (acceptsJson()) {
+            String version = getAnalystVersion("an", id);
+            if (version == null) {
+                return noAnalyst(id);
+            }
+            if (isNotModified(version)) {
+                return notModified();
+            }
+            Analyst analyst = Analyst.findById(id, fields);
             if (analyst == null) {
                 return noAnalyst(id);
             }
-            return ok(analyst.getNotesAsJson());
+            return okJson(analyst.getNotesAsJson());
         } else {
             return badRequest();
         }
@@ -673,10 +956,19 @@ public class Analysts extends AbstractController {
      *
      * @param aId Id of the analyst.
      * @param nId Id of the note to edit.
-     * @return Result  The edit page or the note as JSON.
+     * @return Result  The edit page or the note as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result editNote(Long aId, Long nId) {
 
+        // Answer a JSON request for a note the client already has from its version, before loading it
+        if (!request().accepts("text/html") && nId > 0L) {
+            Long version = Note.getVersion(nId);
+            if (version != null &&
+                isNotModified("n" + nId + "." + version + "." + EntityVersions.getReferenceVersion())) {
+                return notModified();
+            }
+        }
+
         // Check analyst exists and return if not
         Analyst analyst = Analyst.find.byId(aId);
         if (analyst == null) {
@@ -702,8 +994,8 @@ public class Analysts extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return ok(editNote.render(((nId<0)?(0L):(nId)), aId, noteForm, getLoggedInUser()));
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(note.toJson());
+        } else if (acceptsJson()) {
+            return okJson(note.toJson());
         } else {
             return badRequest();
         }
@@ -722,8 +1014,8 @@ public class Analysts extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return edit(aId);
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getErrorAsJson("Note: " + nId + " for analyst: " + aId + " does not exist."));
+        } else if (acceptsJson()) {
+            return okJson(getErrorAsJson("Note: " + nId + " for analyst: " + aId + " does not exist."));
         } else {
             return badRequest();
         }
@@ -747,8 +1039,8 @@ public class Analysts extends AbstractController {
                 // Return data in HTML or JSON as requested
                 if (request().accepts("text/html")) {
                     return badRequest(editNote.render(nId, aId, noteForm, loggedInUser)); // Return to the editNote page
-                } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                    return ok(getErrorsAsJson(noteForm));
+                } else if (acceptsJson()) {
+                    return okJson(getErrorsAsJson(noteForm));
                 } else {
                     return badRequest();
                 }
@@ -796,7 +1088,7 @@ public class Analysts extends AbstractController {
             if (request().accepts("text/html")) {
                 showSaveError(e);
                 return badRequest(editNote.render(nId, aId, noteForm, loggedInUser));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
+            } else if (acceptsJson()) {
                 String msg;
                 if (nId == 0) {
                     msg = "Note for analyst: " + aId + " not created.";
@@ -804,7 +1096,7 @@ public class Analysts extends AbstractController {
                     msg = "Note: " + nId + " for analyst: " + aId + " not updated.";
                 }
                 msg += " Error: " + e.getMessage();
-                return ok(getErrorAsJson(msg));
+                return okJson(getErrorAsJson(msg));
             } else {
                 return badRequest();
             }
@@ -889,8 +1181,8 @@ public class Analysts extends AbstractController {
             if (request().accepts("text/html")) {
                 showSaveError(e);
                 return edit(aId);
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(getErrorAsJson(msg));
+            } else if (acceptsJson()) {
+                return okJson(getErrorAsJson(msg));
             } else {
                 return badRequest();
             }
@@ -901,14 +1193,17 @@ public class Analysts extends AbstractController {
     /**
      * Returns all ranks. Only used for JSON requests.
      *
-     * @return Result  All ranks as JSON.
+     * @return Result  All ranks as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result listRanks() {
         // If HTML requested, go to the home page
         if (request().accepts("text/html")) {
             return redirect(controllers.routes.Application.index());
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(Rank.getAllAsJson());
+        } else if (acceptsJson()) {
+            if (isNotModified("r." + EntityVersions.getReferenceVersion())) {
+                return notModified();
+            }
+            return okJson(Rank.getAllAsJson());
         } else {
             return badRequest();
         }
@@ -918,14 +1213,17 @@ public class Analysts extends AbstractController {
     /**
      * Returns all desks. Only used for JSON requests.
      *
-     * @return Result  All desks as JSON.
+     * @return Result  All desks as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result listDesks() {
         // If HTML requested, go to the home page
         if (request().accepts("text/html")) {
             return redirect(controllers.routes.Application.index());
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(Desk.getAllAsJson());
+        } else if (acceptsJson()) {
+            if (isNotModified("d." + EntityVersions.getReferenceVersion())) {
+                return notModified();
+            }
+            return okJson(Desk.getAllAsJson());
         } else {
             return badRequest();
         }
@@ -935,14 +1233,20 @@ public class Analysts extends AbstractController {
     /**
      * Returns all statuses. Only used for JSON requests.
      *
-     * @return Result  All statuses as JSON.
+     * @return Result  All statuses as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result listStatuses() {
         // If HTML requested, go to the home page
         if (request().accepts("text/html")) {
             return redirect(controllers.routes.Application.index());
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(models.Status.getAllAsJson(getLoggedInUser()));
+        } else if (acceptsJson()) {
+            User loggedInUser = getLoggedInUser();
+            // Admin, manager and staff users see all statuses (see Status.getStatuses)
+            String statuses = (loggedInUser.isAdminOrManagerOrStaff()) ? ("all") : ("current");
+            if (isNotModified("s." + statuses + "." + EntityVersions.getReferenceVersion())) {
+                return notModified();
+            }
+            return okJson(models.Status.getAllAsJson(loggedInUser));
         } else {
             return badRequest();
         }
@@ -1,18 +1,29 @@
 package controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import models.User;
+import models.UserCache;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RejectedExecutionException;
+import org.joda.time.DateTime;
 import play.api.mvc.Call;
+import play.libs.F.Function;
+import play.libs.F.Function0;
+import play.libs.F.Promise;
 import play.mvc.Security;
+import plugins.AuthExecutorPlugin;
+import plugins.LastLoginPlugin;
 
 import play.mvc.Result;
 import play.data.*;
 import static play.data.Form.*;
+import utils.AuthTokens;
+import utils.LoginThrottle;
 import utils.Utils;
 import views.html.*;
 
 /**
- * Application controller that renders the home (index) page and logs the user in and out.
+ * Application controller that renders the home (index) page, logs the user in and out and issues API tokens.
  * Contains a method to call the correct list page when a pagination link is used, and an inner class for login.
  *
  * Date: 16/10/13
@@ -26,6 +37,7 @@ public class Application extends AbstractController {
     // Constants
     public  static final int RECORDS_PER_PAGE = 10;
     private static final String AUTHENTICATION_ERROR_MSG = "Invalid username or password.";
+    public  static final String TOO_MANY_LOGINS_MSG      = "Too many sign-in attempts. Please try again shortly.";
 
     // Add a constant here when creating a new list page
     public static final int PAGE_TYPE_ANALYSTS  =  1;
@@ -41,9 +53,9 @@ public class Application extends AbstractController {
     public static Result index() {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
-            return ok(index.render("SNO2", User.find.where().eq("username", request().username()).findUnique()) );
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getSuccessAsJson("You are signed in " + request().username()));
+            return ok(index.render("SNO2", getLoggedInUser()));
+        } else if (acceptsJson()) {
+            return okJson(getSuccessAsJson("You are signed in " + request().username()));
         } else {
             return badRequest();
         }
@@ -59,8 +71,8 @@ public class Application extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return ok(login.render(form(Login.class)));
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getInfoAsJson("Please sign in with a valid username and password."));
+        } else if (acceptsJson()) {
+            return okJson(getInfoAsJson("Please sign in with a valid username and password."));
         } else {
             return badRequest();
         }
@@ -69,44 +81,161 @@ public class Application extends AbstractController {
 
     /**
      * Authenticates the user and goes the index page.
+     * The password is hashed and checked on the credential pool, so logins don't hold up other requests.
      *
-     * @return Result  The home page if logged in.
+     * @return Promise<Result>  The home page if logged in.
      */
-    public static Result authenticate() {
-        Form<Login> loginForm = form(Login.class).bindFromRequest(); // Get the form data
+    public static Promise<Result> authenticate() {
+        final Form<Login> loginForm = form(Login.class).bindFromRequest(); // Get the form data
         // Check if there are errors
         if (loginForm.hasErrors()) {
-            // Return data in HTML or JSON as requested
-            if (request().accepts("text/html")) {
-                return badRequest(login.render(loginForm));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(getErrorAsJson(AUTHENTICATION_ERROR_MSG));
-            } else {
-                return badRequest();
-            }
+            return Promise.pure(loginFailed(loginForm));
+        }
+        final Login credentials = loginForm.get();
+        if (!LoginThrottle.allow(credentials.username, request().remoteAddress())) {
+            return Promise.pure(tooManyLogins(LoginThrottle.TOO_MANY_REQUESTS));
+        }
+        try {
+            return AuthExecutorPlugin.submit(credentials.checkCredentialsTask()).map(new Function<String,Result>() {
+                public Result apply(String error) {
+                    if (error != null) {
+                        loginForm.reject(error);
+                        return loginFailed(loginForm);
+                    }
+                    LoginThrottle.succeeded(credentials.username, request().remoteAddress());
+                    recordLogin(credentials.username);
+                    session().clear();
+                    session("username", credentials.username);
+                    return redirect(controllers.routes.Application.index());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return Promise.pure(tooManyLogins(SERVICE_UNAVAILABLE));
+        }
+    }
+
+
+    /**
+     * Records the user's login time; it is written to the DB in the background.
+     *
+     * @param username  The authenticated username.
+     */
+    private static void recordLogin(String username) {
+        User user = UserCache.findByUsername(username);
+        if (user != null) {
+            LastLoginPlugin.record(user.id);
+        }
+    }
+
+
+    /**
+     * Returns the login page or an error when the username or password is wrong.
+     *
+     * @param loginForm  The login form.
+     * @return Result    The login page or JSON.
+     */
+    private static Result loginFailed(Form<Login> loginForm) {
+        // Return data in HTML or JSON as requested
+        if (request().accepts("text/html")) {
+            return badRequest(login.render(loginForm));
+        } else if (acceptsJson()) {
+            return okJson(getErrorAsJson(AUTHENTICATION_ERROR_MSG));
         } else {
-            session().clear();
-            String username = loginForm.get().username;
-            session("username", username);
-            return redirect(controllers.routes.Application.index());
+            return badRequest();
         }
     }
 
 
     /**
-     * Logs the user out and goes to the login page.
+     * Returns a "try again" response when sign-in attempts are throttled or the credential pool is full.
+     *
+     * @param httpStatus  The HTTP status, 429 (too many requests) or 503 (service unavailable).
+     * @return Result  The login page or JSON.
+     */
+    private static Result tooManyLogins(int httpStatus) {
+        // Return data in HTML or JSON as requested
+        if (request().accepts("text/html")) {
+            flash(Utils.KEY_ERROR, TOO_MANY_LOGINS_MSG);
+            return status(httpStatus, login.render(form(Login.class)));
+        } else if (acceptsJson()) {
+            return statusJson(httpStatus, getErrorAsJson(TOO_MANY_LOGINS_MSG));
+        } else {
+            return status(httpStatus);
+        }
+    }
+
+
+    /**
+     * Issues a signed bearer token for the JSON API. Only used for JSON requests.
+     * Clients send the token in an "Authorization: Bearer <token>" header instead of a username and password,
+     * so each API call is verified in memory rather than by hashing the password and querying the DB.
+     *
+     * @return Promise<Result>  The token as JSON, or an error.
+     */
+    public static Promise<Result> token() {
+        Form<Login> loginForm = form(Login.class).bindFromRequest(); // Get the username and password
+        if (loginForm.hasErrors()) {
+            return Promise.pure(okJson(getErrorAsJson(AUTHENTICATION_ERROR_MSG)));
+        }
+        final Login credentials = loginForm.get();
+        if (!LoginThrottle.allow(credentials.username, request().remoteAddress())) {
+            return Promise.pure(statusJson(LoginThrottle.TOO_MANY_REQUESTS, getErrorAsJson(TOO_MANY_LOGINS_MSG)));
+        }
+        try {
+            return AuthExecutorPlugin.submit(credentials.checkCredentialsTask()).map(new Function<String,Result>() {
+                public Result apply(String error) {
+                    if (error != null) {
+                        return okJson(getErrorAsJson(AUTHENTICATION_ERROR_MSG));
+                    }
+                    LoginThrottle.succeeded(credentials.username, request().remoteAddress());
+                    recordLogin(credentials.username);
+                    String token = AuthTokens.issue(credentials.username);
+                    ObjectNode result = getSuccessAsJson("Token issued.");
+                    result.put("token", token);
+                    result.put("expires", Utils.formatTimestamp(new DateTime(AuthTokens.getExpiry(token))));
+                    return okJson(result);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return Promise.pure(statusJson(SERVICE_UNAVAILABLE, getErrorAsJson(TOO_MANY_LOGINS_MSG)));
+        }
+    }
+
+
+    /**
+     * Revokes the bearer token sent with the request. Only used for JSON requests.
+     *
+     * @return Result  A message as JSON.
+     */
+    @Security.Authenticated(Secured.class) // Will require the user to be logged in
+    public static Result revokeToken() {
+        String token = AuthTokens.fromHeader(request().getHeader(AUTHORIZATION));
+        if (token != null && AuthTokens.revoke(token)) {
+            return okJson(getSuccessAsJson("Token revoked."));
+        } else {
+            return okJson(getErrorAsJson("Please send a valid bearer token."));
+        }
+    }
+
+
+    /**
+     * Logs the user out and goes to the login page. A bearer token sent with the request is revoked.
      *
      * @return Result  The login page.
      */
     public static Result logout() {
         session().clear();
+        String token = AuthTokens.fromHeader(request().getHeader(AUTHORIZATION));
+        if (token != null) {
+            AuthTokens.revoke(token);
+        }
         // Return data in HTML or JSON as requested
         String msg = "You have signed out.";
         if (request().accepts("text/html")) {
             flash(Utils.KEY_SUCCESS, msg);
             return redirect(controllers.routes.Application.login());
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getSuccessAsJson(msg));
+        } else if (acceptsJson()) {
+            return okJson(getSuccessAsJson(msg));
         } else {
             return badRequest();
         }
@@ -130,8 +259,11 @@ public class Application extends AbstractController {
 
         // Return the list page depending on the page type
         switch (pageType) {
-            case PAGE_TYPE_ANALYSTS:
-                return controllers.routes.Analysts.list(page, sortBy, sortOrder, filter1, filter2);
+            case PAGE_TYPE_ANALYSTS: // Keep any profile query and other criteria, so the links page through the results
+                String query = request().getQueryString("q");
+                Call call = controllers.routes.Analysts.list(page, sortBy, sortOrder, filter1, filter2, "",
+                                                             (query == null) ? ("") : (query));
+                return new Call(call.method(), Analysts.appendCriteria(call.url()));
             case PAGE_TYPE_USERS:
                 return controllers.routes.Users.list(page, sortBy, sortOrder, filter1, filter2);
             default:
@@ -143,6 +275,7 @@ public class Application extends AbstractController {
 
     /**
      * Inner class that holds the username and password and validates the user.
+     * The check isn't named validate(), so binding the form doesn't hash the password on the calling thread.
      */
     public static class Login {
 
@@ -155,13 +288,26 @@ public class Application extends AbstractController {
          * @return String                       An error message if not authenticated, else null.
          * @throws NoSuchAlgorithmException     If the algorithm doesn't exist.
          */
-        public String validate() throws NoSuchAlgorithmException {
+        public String checkCredentials() throws NoSuchAlgorithmException {
             if (username == null || password == null || User.authenticate(username, password) == null) {
                 return AUTHENTICATION_ERROR_MSG;
             }
             return null;
         }
 
+        /**
+         * Returns the credential check as a task to run on the credential pool.
+         *
+         * @return Function0<String>  A task returning an error message if not authenticated, else null.
+         */
+        public Function0<String> checkCredentialsTask() {
+            return new Function0<String>() {
+                public String apply() throws NoSuchAlgorithmException {
+                    return checkCredentials();
+                }
+            };
+        }
+
     }
 
 
@@ -0,0 +1,103 @@
+package controllers;
+
+import models.User;
+import models.UserCache;
+import play.mvc.Http.Context;
+
+/**
+ * The authenticated user of the current request together with the user's roles.
+ * Secured resolves the principal once when it authenticates the request and keeps it in the context args,
+ * so controllers, templates and JSON conversion read the roles from memory instead of querying the DB per check.
+ *
+ * Date:        18/10/26
+ * Time:        04:34
+ *
+ * @version     1.0
+ */
+public class Principal {
+
+    // Key of the principal in the context args
+    private static final String CTX_KEY = "principal";
+
+    public final User   user;
+    public final int    roles;
+
+
+    /**
+     * Constructor. Builds the role bitmask from one fetch of the user's groups.
+     *
+     * @param user  The authenticated user.
+     */
+    private Principal(User user) {
+        this.user = user;
+        this.roles = user.getRoles();
+    }
+
+
+    /**
+     * Looks up the user (usually from the user cache) and stores the principal in the context.
+     *
+     * @param ctx       The context object.
+     * @param username  The authenticated username.
+     * @return Principal  The principal, or null if the user doesn't exist.
+     */
+    static Principal resolve(Context ctx, String username) {
+        if (username == null) {
+            return null;
+        }
+        User user = UserCache.findByUsername(username);
+        if (user == null) {
+            return null;
+        }
+        Principal principal = new Principal(user);
+        ctx.args.put(CTX_KEY, principal);
+        return principal;
+    }
+
+
+    /**
+     * Returns the principal of the current request, resolving it if Secured hasn't already done so.
+     *
+     * @return Principal  The principal, or null if the request isn't authenticated.
+     */
+    public static Principal current() {
+        Context ctx = Context.current();
+        Principal principal = (Principal) ctx.args.get(CTX_KEY);
+        if (principal == null) {
+            principal = resolve(ctx, ctx.request().username());
+        }
+        return principal;
+    }
+
+
+    /**
+     * Checks if the principal is an admin user.
+     *
+     * @return boolean  True if an admin user.
+     */
+    public boolean isAdmin() {
+        return (roles & User.ROLE_ADMIN) != 0;
+    }
+
+
+    /**
+     * Checks if the principal is an admin user or a manager.
+     *
+     * @return boolean  True if an admin user or a manager.
+     */
+    public boolean isAdminOrManager() {
+        return (roles & (User.ROLE_ADMIN | User.ROLE_MANAGER)) != 0;
+    }
+
+
+    /**
+     * Checks if the principal is an admin user, a manager or a staff member.
+     *
+     * @return boolean  True if an admin user, a manager or a staff member.
+     */
+    public boolean isAdminOrManagerOrStaff() {
+        return (roles & (User.ROLE_ADMIN | User.ROLE_MANAGER | User.ROLE_STAFF)) != 0;
+    }
+
+
+}
@@ -2,59 +2,129 @@ package controllers;
 
 import play.mvc.*;
 import play.mvc.Http.*;
+import play.Logger;
+import play.libs.F;
 
 import models.*;
-import utils.Utils;
+import plugins.AuthExecutorPlugin;
+import plugins.LastLoginPlugin;
+import utils.AuthTokens;
+import utils.LoginThrottle;
 
-import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Ensures pages have an authenticated user.
  * Contains methods to get the username, redirect to the login page if not authorised and check if an admin user.
+ * The user and their roles are resolved once per request and kept as the request's Principal.
  *
  * Date: 18/10/13
  * Time: 11:37
  *
  * @author      Sav Balac
- * @version     1.2
+ * @version     1.3
  */
 public class Secured extends Security.Authenticator {
 
+    // Constants
+    private static final String HEADER_USERNAME = "headerUsername"; // Context args key of a header-checked username
 
     /**
-     * Gets the username.
+     * The outcome of checking a request's username and password headers (see checkHeaders).
+     */
+    public enum HeaderCheck {
+        VALID,      // The action runs as the user
+        INVALID,    // The action runs and, as there's no user, the request is unauthorised
+        THROTTLED   // Too many attempts, or the credential pool is full, so the action doesn't run
+    }
+
+
+    /**
+     * Gets the username and resolves the principal (the user and their roles) for the request.
      *
      * @param ctx  The context object.
-     * @return String  The username.
+     * @return String  The username, or null if not authenticated.
      */
     @Override
     public String getUsername(Context ctx) {
+        String username = authenticate(ctx);
+        if (username == null) {
+            return null;
+        }
+        Principal principal = Principal.resolve(ctx, username);
+        if (principal == null) {
+            return null;
+        }
+        // API calls authenticate on each request, so record them as logins (written in the background)
+        if (ctx.session().get("username") == null) {
+            LastLoginPlugin.record(principal.user.id);
+        }
+        return username;
+    }
+
+
+    /**
+     * Gets the username from the session or, for the JSON API, from a bearer token or the request headers.
+     *
+     * @param ctx  The context object.
+     * @return String  The username, or null if not authenticated.
+     */
+    private String authenticate(Context ctx) {
 
         // Get the username from the cookie
-        // Requests from the JSON API may include the username and password to avoid logging in first
+        // Requests from the JSON API may include a bearer token (verified without a DB query),
+        // or the username and password, to avoid logging in first (already checked by checkHeaders())
         if (ctx.session().get("username") != null) {
             return ctx.session().get("username");
+        } else if (ctx.request().getHeader(Http.HeaderNames.AUTHORIZATION) != null) {
+            return AuthTokens.verify(AuthTokens.fromHeader(ctx.request().getHeader(Http.HeaderNames.AUTHORIZATION)));
         } else {
-            if (ctx.request().accepts("application/json") || ctx.request().accepts("text/json")) {
-                String username = ctx.request().getHeader("username");
-                String password = ctx.request().getHeader("password");
-                Application.Login login = new Application.Login();
-                login.username = username;
-                login.password = password;
-                try {
-                    if (login.validate() == null) {
-                        return username;
-                    } else {
-                        return null;
+            return (String) ctx.args.get(HEADER_USERNAME); // Set by checkHeaders() if the headers were valid
+        }
+    }
+
+
+    /**
+     * Checks the username and password headers that JSON API requests may send instead of logging in first.
+     * The password is hashed on the credential pool and the returned promise is completed when it's checked, so
+     * the request's thread isn't held meanwhile. Global.onRequest runs the action when the promise is redeemed,
+     * and getUsername() then finds the username in the context args, or answers 429 if the check was throttled.
+     *
+     * @param ctx  The context object.
+     * @return Promise<HeaderCheck>  Whether the headers were valid, or null if the request doesn't use them.
+     */
+    public static F.Promise<HeaderCheck> checkHeaders(final Context ctx) {
+        final String username = ctx.request().getHeader("username");
+        if (username == null || ctx.session().get("username") != null
+                || ctx.request().getHeader(Http.HeaderNames.AUTHORIZATION) != null
+                || !AbstractController.acceptsJson(ctx.request())) {
+            return null;
+        }
+        final String address = ctx.request().remoteAddress();
+        if (!LoginThrottle.allow(username, address)) {
+            return F.Promise.pure(HeaderCheck.THROTTLED); // Before any hashing or DB work
+        }
+        Application.Login login = new Application.Login();
+        login.username = username;
+        login.password = ctx.request().getHeader("password");
+        try {
+            return AuthExecutorPlugin.submit(login.checkCredentialsTask()).map(new F.Function<String,HeaderCheck>() {
+                public HeaderCheck apply(String error) {
+                    if (error != null) {
+                        return HeaderCheck.INVALID;
                     }
-                } catch (NoSuchAlgorithmException ex) {
-                    // Log an error
-                    Utils.eHandler("Secured.getUsername()", ex);
-                    return null;
+                    LoginThrottle.succeeded(username, address);
+                    ctx.args.put(HEADER_USERNAME, username);
+                    return HeaderCheck.VALID;
+                }
+            }).recover(new F.Function<Throwable,HeaderCheck>() {
+                public HeaderCheck apply(Throwable t) {
+                    Logger.error("Secured.checkHeaders()", t);
+                    return HeaderCheck.INVALID;
                 }
-            } else {
-                return null;
-            }
+            });
+        } catch (RejectedExecutionException e) { // The pool is full
+            return F.Promise.pure(HeaderCheck.THROTTLED);
         }
     }
 
@@ -77,7 +147,8 @@ public class Secured extends Security.Authenticator {
      * @return boolean  If the user is an admin user.
      */
     public static boolean isAdminUser() {
-        return User.isAdminUser(Context.current().request().username());
+        Principal principal = Principal.current();
+        return principal != null && principal.isAdmin();
     }
 
 
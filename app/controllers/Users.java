@@ -1,11 +1,15 @@
 package controllers;
 
-import com.avaje.ebean.Page;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import models.EntityVersions;
 import models.User;
 import models.Group;
+import models.UserCache;
 import play.data.Form;
 import play.mvc.Result;
 import play.mvc.Security;
+import utils.KeysetCursor;
+import utils.ListPage;
 import utils.Utils;
 import views.html.Users.*;
 import views.html.*;
@@ -31,9 +35,11 @@ public class Users extends AbstractController {
      * @param page          Current page number (starts from 0).
      * @param sortBy        Column to be sorted.
      * @param order         Sort order (either asc or desc).
-     * @param filter        Filter applied on group name.
+     * @param filter        Filter applied on group (the group id).
      * @param search        Search applied on full name.
-     * @return Result  The list page.
+     * @return Result  The list page, or a page of users as JSON with links to the pages either side.
+     *                 JSON pages are by cursor (c), with limit and count (count=true) read from the query string;
+     *                 all=true returns every user instead.
      */
     public static Result list(int page, String sortBy, String order, String filter, String search) {
 
@@ -43,10 +49,34 @@ public class Users extends AbstractController {
             // Return data in HTML or JSON as requested
             if (request().accepts("text/html")) {
                 // Get a page of users and render the list page
-                Page<User> pageUsers = User.page(page, Application.RECORDS_PER_PAGE, sortBy, order, filter, search);
+                ListPage<User> pageUsers = User.page(page, Application.RECORDS_PER_PAGE, sortBy, order, filter, search);
                 return ok(listUsers.render(pageUsers, sortBy, order, filter, search, loggedInUser));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(User.getAllAsJson());
+            } else if (acceptsJson()) {
+                if ("true".equalsIgnoreCase(request().getQueryString("all"))) {
+                    return okJson(User.getAllAsJson());
+                }
+
+                // A page by cursor (c in the query string), from the start of the list unless a page number is given
+                int limit = getLimit();
+                boolean count = isCountRequested();
+                String cursor = request().getQueryString("c");
+                ListPage<User> pageUsers;
+                if (cursor == null && page > 0) {
+                    pageUsers = User.page(page, limit, sortBy, order, filter, search);
+                } else {
+                    pageUsers = User.seek((cursor == null) ? (KeysetCursor.START) : (cursor), limit, sortBy, order,
+                                          filter, search, count);
+                }
+                ObjectNode result = User.getPageAsJson(pageUsers, count);
+                String prev = getPageLink(pageUsers, false, sortBy, order, filter, search, limit, count);
+                String next = getPageLink(pageUsers, true, sortBy, order, filter, search, limit, count);
+                if (prev != null) {
+                    result.put("prev", prev);
+                }
+                if (next != null) {
+                    result.put("next", next);
+                }
+                return okJson(result);
             } else {
                 return badRequest();
             }
@@ -56,6 +86,42 @@ public class Users extends AbstractController {
     }
 
 
+    /**
+     * Gets the link to the page before or after a page of users as JSON, keeping the filter, limit and count.
+     *
+     * @param page          The page of users.
+     * @param next          True for the next page, false for the previous page.
+     * @param sortBy        Column to be sorted.
+     * @param order         Sort order (either asc or desc).
+     * @param filter        Filter applied on group.
+     * @param search        Search applied on full name.
+     * @param limit         Number of users per page.
+     * @param count         True if the total is wanted.
+     * @return String  The link, or null if there's no such page.
+     */
+    private static String getPageLink(ListPage<User> page, boolean next, String sortBy, String order, String filter,
+                                      String search, int limit, boolean count) {
+        if (!((next) ? (page.hasNext()) : (page.hasPrev()))) {
+            return null;
+        }
+        StringBuilder link;
+        if (page.isKeyset()) {
+            String cursor = (next) ? (page.getNextCursor()) : (page.getPrevCursor());
+            if (cursor == null) {
+                return null;
+            }
+            link = new StringBuilder(routes.Users.list(0, sortBy, order, filter, search).url());
+            appendParam(link, "c", cursor);
+        } else {
+            int pageIndex = page.getPageIndex() + ((next) ? (1) : (-1));
+            link = new StringBuilder(routes.Users.list(pageIndex, sortBy, order, filter, search).url());
+        }
+        appendParam(link, "limit", limit);
+        appendParam(link, "count", (count) ? (Boolean.TRUE) : (null));
+        return link.toString();
+    }
+
+
     /**
      * Show an error and the Access Denied page. In case the URL is set manually and the user doesn't have access.
      *
@@ -68,8 +134,8 @@ public class Users extends AbstractController {
         if (request().accepts("text/html")) {
             flash(Utils.KEY_INFO, msg);
             return ok(accessDenied.render(loggedInUser));
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getInfoAsJson(msg)); // Method in AbstractController
+        } else if (acceptsJson()) {
+            return okJson(getInfoAsJson(msg)); // Method in AbstractController
         } else {
             return badRequest();
         }
@@ -94,7 +160,7 @@ public class Users extends AbstractController {
      * Displays a form to create a new or edit an existing user.
      *
      * @param id  Id of the user to edit.
-     * @return Result  The edit page or the user as JSON.
+     * @return Result  The edit page or the user as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result edit(Long id) {
 
@@ -103,6 +169,17 @@ public class Users extends AbstractController {
         if (Secured.isAdminUser() || id.equals(loggedInUser.id)) {
             Form<User> userForm;
 
+            // Answer a JSON request for a user the client already has from its version, before loading it
+            if (!request().accepts("text/html") && id > 0L) {
+                String version = getUserVersion("u", id);
+                if (version == null) {
+                    return noUser(id);
+                }
+                if (isNotModified(version)) {
+                    return notModified();
+                }
+            }
+
             // New users have id 0 and don't exist
             User user;
             if (id <= 0L) {
@@ -119,8 +196,8 @@ public class Users extends AbstractController {
             // Return data in HTML or JSON as requested
             if (request().accepts("text/html")) {
                 return ok(editUser.render(((id<0)?(0L):(id)), userForm, loggedInUser));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(user.toJson());
+            } else if (acceptsJson()) {
+                return okJson(user.toJson());
             } else {
                 return badRequest();
             }
@@ -130,6 +207,20 @@ public class Users extends AbstractController {
     }
 
 
+    /**
+     * Returns the version of a user's JSON, from which its ETag is made: the user's version (which changes with its
+     * groups) and the version of the reference data.
+     *
+     * @param  prefix  Identifies the response (e.g. "ug" for the user's groups).
+     * @param  id      Id of the user.
+     * @return String  The version, or null if the user doesn't exist.
+     */
+    private static String getUserVersion(String prefix, Long id) {
+        Long version = User.getVersion(id);
+        return (version == null) ? (null) : (prefix + id + "." + version + "." + EntityVersions.getReferenceVersion());
+    }
+
+
     /**
      * Returns either the list page or a JSON message when the user doesn't exist.
      *
@@ -140,8 +231,8 @@ public class Users extends AbstractController {
         // Return data in HTML or JSON as requested
         if (request().accepts("text/html")) {
             return list(0, "fullname", "asc", "", "");
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getErrorAsJson("User: " + id + " does not exist."));
+        } else if (acceptsJson()) {
+            return okJson(getErrorAsJson("User: " + id + " does not exist."));
         } else {
             return badRequest();
         }
@@ -168,8 +259,8 @@ public class Users extends AbstractController {
                     // Return data in HTML or JSON as requested
                     if (request().accepts("text/html")) {
                         return badRequest(editUser.render(id, userForm, loggedInUser)); // Return to the editUser page
-                    } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                        return ok(getErrorsAsJson(userForm));
+                    } else if (acceptsJson()) {
+                        return okJson(getErrorsAsJson(userForm));
                     } else {
                         return badRequest();
                     }
@@ -179,7 +270,7 @@ public class Users extends AbstractController {
 
                     // Check id supplied by the form is the same as the id parameter (only possible via JSON)
                     if (!newUser.id.equals(id)) {
-                        return ok(getErrorAsJson("User id in the data (" + newUser.id + ") " +
+                        return okJson(getErrorAsJson("User id in the data (" + newUser.id + ") " +
                                                  "does not match the user id in the URL (" + id + ")."));
                     }
 
@@ -228,8 +319,8 @@ public class Users extends AbstractController {
                         } else {
                             return redirect(controllers.routes.Users.list(0, "fullname", "asc", "", ""));
                         }
-                    } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                        return ok(getSuccessAsJson(msg));
+                    } else if (acceptsJson()) {
+                        return okJson(getSuccessAsJson(msg));
                     } else {
                         return badRequest();
                     }
@@ -244,7 +335,7 @@ public class Users extends AbstractController {
                     // Show a message and return to the editUser page
                     showSaveError(e); // Method in AbstractController
                     return badRequest(editUser.render(id, userForm, loggedInUser));
-                } else if (request().accepts("application/json") || request().accepts("text/json")) {
+                } else if (acceptsJson()) {
                     String msg;
                     if (id == 0) {
                         msg = "User not created.";
@@ -252,7 +343,7 @@ public class Users extends AbstractController {
                         msg = "User: " + id + " not updated.";
                     }
                     msg += " Error: " + e.getMessage();
-                    return ok(getErrorAsJson(msg));
+                    return okJson(getErrorAsJson(msg));
                 } else {
                     return badRequest();
                 }
@@ -282,8 +373,9 @@ public class Users extends AbstractController {
                 // Delete groups
                 user.delAllGroups(); // Many-many
 
-                // Delete the user
+                // Delete the user and remove it from the cache of logged-in users
                 user.delete();
+                UserCache.remove(user.id, user.username);
                 String msg = "User: " + fullName + " deleted.";
                 return actionSuccessful(id, msg, PAGE_TYPE_LIST);
             } catch (Exception e) {
@@ -294,8 +386,8 @@ public class Users extends AbstractController {
                 if (request().accepts("text/html")) {
                     showSaveError(e);
                     return redirect(controllers.routes.Users.list(0, "fullname", "asc", "", ""));
-                } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                    return ok(getErrorAsJson(msg));
+                } else if (acceptsJson()) {
+                    return okJson(getErrorAsJson(msg));
                 } else {
                     return badRequest();
                 }
@@ -326,8 +418,8 @@ public class Users extends AbstractController {
                 default:
                     return null;
             }
-        } else if (request().accepts("application/json") || request().accepts("text/json")) {
-            return ok(getSuccessAsJson(msg));
+        } else if (acceptsJson()) {
+            return okJson(getSuccessAsJson(msg));
         } else {
             return badRequest();
         }
@@ -337,15 +429,18 @@ public class Users extends AbstractController {
     /**
      * Returns all groups. Only used for JSON requests.
      *
-     * @return Result  All groups as JSON.
+     * @return Result  All groups as JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result listGroups() {
         if (Secured.isAdminUser()) { // Check if an admin user
             // If HTML requested, go to the home page
             if (request().accepts("text/html")) {
                 return redirect(controllers.routes.Application.index());
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(Group.getAllAsJson());
+            } else if (acceptsJson()) {
+                if (isNotModified("g." + EntityVersions.getReferenceVersion())) {
+                    return notModified();
+                }
+                return okJson(Group.getAllAsJson());
             } else {
                 return badRequest();
             }
@@ -359,19 +454,26 @@ public class Users extends AbstractController {
      * Displays a (usually embedded) form to display the groups a user is assigned to.
      *
      * @param id  Id of the user.
-     * @return Result  The user groups page.
+     * @return Result  The user groups page or JSON (304 Not Modified if the client's copy, by ETag, is current).
      */
     public static Result editGroups(Long id) {
         if (Secured.isAdminUser()) { // Check if an admin user
-            User user = User.find.byId(id);
             // Return data in HTML or JSON as requested
             if (request().accepts("text/html")) {
-                return ok(tagListUserGroups.render(user)); // This template handles null users
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
+                return ok(tagListUserGroups.render(User.find.byId(id))); // This template handles null users
+            } else if (acceptsJson()) {
+                String version = getUserVersion("ug", id);
+                if (version == null) {
+                    return noUser(id);
+                }
+                if (isNotModified(version)) {
+                    return notModified();
+                }
+                User user = User.find.byId(id);
                 if (user == null) {
                     return noUser(id);
                 }
-                return ok(user.getGroupsAsJson());
+                return okJson(user.getGroupsAsJson());
             } else {
                 return badRequest();
             }
@@ -484,8 +586,8 @@ public class Users extends AbstractController {
                 Form<User> userForm;
                 userForm = Form.form(User.class).fill(user);
                 return ok(editPassword.render(id, userForm, loggedInUser));
-            } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                return ok(user.toJson());
+            } else if (acceptsJson()) {
+                return okJson(user.toJson());
             } else {
                 return badRequest();
             }
@@ -522,8 +624,8 @@ public class Users extends AbstractController {
                     // Return data in HTML or JSON as requested
                     if (request().accepts("text/html")) {
                         return badRequest(editPassword.render(id, userForm, loggedInUser)); // Return to editPassword
-                    } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                        return ok(getErrorsAsJson(userForm));
+                    } else if (acceptsJson()) {
+                        return okJson(getErrorsAsJson(userForm));
                     } else {
                         return badRequest();
                     }
@@ -533,7 +635,7 @@ public class Users extends AbstractController {
 
                     // Check id supplied by the form is the same as the id parameter (only possible via JSON)
                     if (!user.id.equals(id)) {
-                        return ok(getErrorAsJson("User id in the data (" + user.id + ") " +
+                        return okJson(getErrorAsJson("User id in the data (" + user.id + ") " +
                                                  "does not match the user id in the URL (" + id + ")."));
                     }
 
@@ -570,8 +672,8 @@ public class Users extends AbstractController {
                 if (request().accepts("text/html")) {
                     showSaveError(e);
                     return badRequest(editPassword.render(id, userForm, loggedInUser));
-                } else if (request().accepts("application/json") || request().accepts("text/json")) {
-                    return ok(getErrorAsJson(msg));
+                } else if (acceptsJson()) {
+                    return okJson(getErrorAsJson(msg));
                 } else {
                     return badRequest();
                 }
@@ -1,17 +1,27 @@
 package models;
 
-import com.avaje.ebean.Page;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.*;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import org.joda.time.DateTime;
 import play.data.format.Formats;
 import play.data.validation.Constraints;
 import play.db.ebean.Model;
 import play.db.ebean.Model.Finder; // Import Finder as sometimes Play! shows compilation error "not found: type Finder"
 import play.libs.Json;
+import utils.KeysetCursor;
+import utils.ListPage;
 import utils.Utils;
 
 /**
@@ -26,7 +36,7 @@ import utils.Utils;
  */
 @Entity
 @Table(name="analyst")
-public class Analyst extends Model {
+public class Analyst extends Model implements KeysetCursor.Row {
 
     // Instance variables (Play! generates getters and setters)
     @Constraints.Required                      // A required constraint will ensure form fields are entered
@@ -103,6 +113,9 @@ public class Analyst extends Model {
     @OneToOne @JoinColumn(name="cv_document")
     public S3File                   cvDocument;
 
+    @Column(insertable=false, updatable=false)
+    public Long                     version;  // Incremented by each write, including its desks and notes (see touch)
+
 
     /**
      * Generic query helper for entity Analyst.
@@ -110,42 +123,252 @@ public class Analyst extends Model {
     public static Finder<Long,Analyst> find = new Finder<Long,Analyst>(Long.class, Analyst.class);
 
 
+    /**
+     * Columns the analyst list can be sorted on (sortBy values are checked against these).
+     */
+    public static final List<String> SORT_COLUMNS =
+            Arrays.asList("lastname", "firstname", "primaryDesk.name", "rank.name", "status.statusName", "analystId");
+
+
+    /**
+     * Returns the sort column if it's one the list can be sorted on, otherwise lastname.
+     *
+     * @param sortBy    The requested sort column.
+     * @return String   A valid sort column.
+     */
+    public static String checkSortBy(String sortBy) {
+        return (SORT_COLUMNS.contains(sortBy)) ? (sortBy) : ("lastname");
+    }
+
+
+    /**
+     * Returns the sort order if valid, otherwise asc.
+     *
+     * @param order     The requested sort order.
+     * @return String   Either asc or desc.
+     */
+    public static String checkOrder(String order) {
+        return ("desc".equalsIgnoreCase(order)) ? ("desc") : ("asc");
+    }
+
+
     /**
      * Returns a page of analysts.
+     * The matching ids are found by intersecting the in-memory id sets (see AnalystQuery) and the page is a slice of
+     * the in-memory ordering for the sort column (see AnalystIndex), so the DB only reads the page's analysts by id.
+     * With no criteria the total is the DB's maintained count.
      *
      * @param page          Page to display.
      * @param pageSize      Number of analysts per page.
      * @param sortBy        Analyst property used for sorting.
      * @param order         Sort order (either or asc or desc).
-     * @param filter        Filter applied on primary desk.
-     * @param search        Search applied on lastname.
-     * @return Page<Analyst>  A page of analysts.
-     */
-    public static Page<Analyst> page(int page, int pageSize, String sortBy, String order, String filter, String search) {
-
-        // Search on lastname, otherwise filter on the primary desk's name
-        Page p = null;
-        if (!search.isEmpty()) { // Search
-            p = find.where()
-                    .ilike("lastname", "%" + search + "%")
-                    .orderBy(sortBy + " " + order)
-                    .findPagingList(pageSize)
-                    .getPage(page);
+     * @param criteria      The list criteria.
+     * @param fields        The fields to load (see AnalystFieldPolicy).
+     * @return ListPage<Analyst>  A page of analysts.
+     */
+    public static ListPage<Analyst> page(int page, int pageSize, String sortBy, String order, AnalystQuery criteria,
+                                        long fields) {
+        BitSet ids = criteria.evaluate();
+        int rowCount;
+        if (ids == null) {
+            rowCount = CountCache.count(CountCache.ANALYST, "", "", find.where());
         } else {
-            if (!filter.isEmpty()) { // Filter
-                p = find.where()
-                        .ilike("primaryDesk.name", "%" + filter + "%")
-                        .orderBy(sortBy + " " + order)
-                        .findPagingList(pageSize)
-                        .getPage(page);
-            } else { // Get all records
-                p = find.where()
-                        .orderBy(sortBy + " " + order)
-                        .findPagingList(pageSize)
-                        .getPage(page);
+            rowCount = ids.cardinality();
+        }
+        List<Long> pageIds = AnalystIndex.sortedSlice(checkSortBy(sortBy), checkOrder(order).equals("asc"), ids,
+                                                      page * pageSize, pageSize);
+        return ListPage.offset(findInOrder(pageIds, fields), page, pageSize, rowCount);
+    }
+
+
+    /**
+     * Returns a page of analysts using keyset (seek) pagination: the page starts after (or ends before) the cursor's
+     * position in the (sortBy, analystId) ordering, so every page costs the same as the first.
+     * The position is found in the in-memory ordering for the sort column (see AnalystIndex) and the page's ids are
+     * read from there, so the DB only reads the page's analysts by id.
+     *
+     * @param cursor        The cursor (see KeysetCursor).
+     * @param pageSize      Number of analysts per page.
+     * @param sortBy        Analyst property used for sorting.
+     * @param order         Sort order (either or asc or desc).
+     * @param criteria      The list criteria.
+     * @param count         True to count the analysts in the list, otherwise the total is -1.
+     * @param fields        The fields to load (see AnalystFieldPolicy), to which the sort column is added.
+     * @return ListPage<Analyst>  A page of analysts with cursors to the pages either side.
+     */
+    public static ListPage<Analyst> seek(String cursor, int pageSize, String sortBy, String order,
+                                         AnalystQuery criteria, boolean count, long fields) {
+        BitSet ids = criteria.evaluate();
+        int rowCount = -1;
+        if (count) {
+            rowCount = (ids == null) ? (CountCache.count(CountCache.ANALYST, "", "", find.where())) :
+                                       (ids.cardinality());
+        }
+        sortBy = checkSortBy(sortBy);
+        KeysetCursor position = KeysetCursor.parse(cursor);
+        // Read one extra analyst to find out if there's another page
+        List<Long> pageIds = AnalystIndex.seek(sortBy, checkOrder(order).equals("asc"), ids, position, pageSize + 1);
+        return ListPage.keyset(findInOrder(pageIds, fields | AnalystFieldPolicy.forSort(sortBy)), position, pageSize,
+                               sortBy, rowCount);
+    }
+
+
+    /**
+     * Returns a page of analysts whose profile text (position description, biography, academic and expertise)
+     * contains every word of the query and who meet the other criteria, most relevant first. Matches come from
+     * the in-memory indexes, so only the page's analysts are read from the DB.
+     *
+     * @param criteria      The list criteria, including the words to search for.
+     * @param page          Page to display.
+     * @param pageSize      Number of analysts per page.
+     * @param fields        The fields to load (see AnalystFieldPolicy).
+     * @return ListPage<Analyst>  A page of analysts.
+     */
+    public static ListPage<Analyst> searchProfiles(AnalystQuery criteria, int page, int pageSize, long fields) {
+        BitSet matching = criteria.withoutQuery().evaluate(); // The other criteria (null if none)
+        List<Long> ids = new ArrayList<Long>();
+        for (Long id : AnalystIndex.searchProfiles(criteria.query)) { // Keep the relevance order
+            if (matching == null || matching.get(id.intValue())) {
+                ids.add(id);
+            }
+        }
+        int from = Math.min(page * pageSize, ids.size());
+        int to = Math.min(from + pageSize, ids.size());
+        return ListPage.offset(findInOrder(ids.subList(from, to), fields), page, pageSize, ids.size());
+    }
+
+
+    /**
+     * Returns an analyst with the fields of a fieldset and their relationships loaded in batches (see
+     * AnalystFieldPolicy.select), rather than one by one as they're read.
+     *
+     * @param id        The analyst id.
+     * @param fields    The fields to load (the analyst id is always loaded).
+     * @return Analyst  The analyst, or null if not found.
+     */
+    public static Analyst findById(Long id, long fields) {
+        return AnalystFieldPolicy.select(find.query(), fields).where().idEq(id).findUnique();
+    }
+
+
+    /**
+     * Returns the analysts with the given ids, in the order of the ids (ids not found are left out).
+     *
+     * @param ids             The analyst ids.
+     * @param fields          The fields to load (see AnalystFieldPolicy).
+     * @return List<Analyst>  The analysts.
+     */
+    public static List<Analyst> findInOrder(List<Long> ids, long fields) {
+        List<Analyst> analysts = new ArrayList<Analyst>(ids.size());
+        if (ids.isEmpty()) {
+            return analysts;
+        }
+        Map<Long,Analyst> byId = new HashMap<Long,Analyst>();
+        // Join the references wanted (e.g. the primary desk, rank and status), rather than loading them per analyst
+        for (Analyst analyst : AnalystFieldPolicy.select(find.query(), fields).where().idIn(ids).findList()) {
+            byId.put(analyst.analystId, analyst);
+        }
+        for (Long id : ids) {
+            Analyst analyst = byId.get(id);
+            if (analyst != null) {
+                analysts.add(analyst);
             }
         }
-        return p;
+        return analysts;
+    }
+
+
+    /**
+     * Returns the analyst's value of a sort column, as used in a keyset cursor.
+     *
+     * @param sortBy    The sort column (one of SORT_COLUMNS).
+     * @return String   The value (may be null).
+     */
+    public String getSortValue(String sortBy) {
+        switch (sortBy) {
+            case "firstname":
+                return firstname;
+            case "primaryDesk.name":
+                return (primaryDesk == null) ? (null) : (primaryDesk.name);
+            case "rank.name":
+                return (rank == null) ? (null) : (rank.name);
+            case "status.statusName":
+                return (status == null) ? (null) : (status.statusName);
+            case "analystId":
+                return String.valueOf(analystId);
+            default:
+                return lastname;
+        }
+    }
+
+
+    /**
+     * Returns the analyst id, which breaks ties in a keyset cursor.
+     *
+     * @return Long  The analyst id.
+     */
+    public Long getRowId() {
+        return analystId;
+    }
+
+
+    /**
+     * Saves a new analyst and updates the list counts, cached pages and cached JSON.
+     */
+    @Override
+    public void save() {
+        super.save();
+        CountCache.inserted(CountCache.ANALYST);
+        AnalystListCache.changed();
+        AnalystJsonCache.changed(analystId);
+    }
+
+
+    /**
+     * Updates the analyst and invalidates the filtered list counts, cached pages and cached JSON (the desk or name may
+     * have changed).
+     */
+    @Override
+    public void update() {
+        super.update();
+        CountCache.changed(CountCache.ANALYST);
+        AnalystListCache.changed();
+        AnalystJsonCache.changed(analystId);
+        touch(analystId);
+    }
+
+
+    /**
+     * Increments an analyst's version, e.g. when one of its notes is written.
+     *
+     * @param analystId  The analyst id.
+     */
+    static void touch(Long analystId) {
+        EntityVersions.bump("analyst", "analyst_id", analystId);
+    }
+
+
+    /**
+     * Returns an analyst's version without loading the analyst.
+     *
+     * @param analystId  The analyst id.
+     * @return Long      The version, or null if the analyst doesn't exist.
+     */
+    public static Long getVersion(Long analystId) {
+        return EntityVersions.get("analyst", "analyst_id", analystId);
+    }
+
+
+    /**
+     * Deletes the analyst and updates the list counts, indexes, cached pages and cached JSON.
+     */
+    @Override
+    public void delete() {
+        super.delete();
+        CountCache.deleted(CountCache.ANALYST);
+        AnalystIndex.remove(analystId);
+        AnalystListCache.changed();
+        AnalystJsonCache.changed(analystId);
     }
 
 
@@ -161,6 +384,8 @@ public class Analyst extends Model {
         } else {
             update();
         }
+        AnalystIndex.refresh(analystId);
+        AnalystListCache.changed(); // Again, as a page may have been cached from the old indexes in the meantime
     }
 
 
@@ -328,20 +553,66 @@ public class Analyst extends Model {
 
 
     /**
-     * Gets all analysts as JSON.
+     * Writes the next batch of all analysts, in last name order, as JSON array elements. Each batch is a keyset query
+     * (see seek), so no DB cursor is held open between batches and analysts added or deleted meanwhile don't shift
+     * the rest. Each analyst's JSON (or Smile fragment) comes from AnalystJsonCache and is appended to the stream
+     * as it is, after flushing the generator.
      *
-     * @return ObjectNode  The analysts as a JSON object node.
+     * @param generator     The JSON (or Smile) generator, from JsonEncoding.createGenerator.
+     * @param out           The stream the generator writes to.
+     * @param cursor        The cursor after the previous batch (KeysetCursor.START for the first).
+     * @param batchSize     The most analysts to write.
+     * @param tier          The logged-in user's tier.
+     * @param fields        The fields to write (see AnalystFieldPolicy), which are the only ones read.
+     * @return String       The cursor for the next batch, or null if this was the last.
+     * @throws IOException  If the JSON can't be written.
      */
-    public static ObjectNode getAllAsJson(User loggedInUser) {
-        List<Analyst> analysts = Analyst.find.where().orderBy("lastname").findList();
+    public static String writeJsonBatch(JsonGenerator generator, OutputStream out, String cursor, int batchSize,
+                                        AnalystFieldPolicy.Tier tier, long fields) throws IOException {
+        long read = AnalystJsonCache.getVersion();
+        ListPage<Analyst> batch = seek(cursor, batchSize, "lastname", "asc", AnalystQuery.all(), false, fields);
+        boolean smile = (generator instanceof SmileGenerator);
+        boolean first = KeysetCursor.parse(cursor).isStart(); // No separator before the first analyst
+        generator.flush(); // So the analysts follow what's been written
+        for (Analyst analyst : batch.getList()) {
+            if (!smile && !first) {
+                out.write(',');
+            }
+            out.write(AnalystJsonCache.get(analyst, tier, fields, smile, read));
+            first = false;
+        }
+        return batch.getNextCursor();
+    }
+
+
+    /**
+     * Gets a page of analysts as JSON, with the cursors for the pages either side (keyset pages only).
+     * The analysts' JSON is joined from AnalystJsonCache.
+     *
+     * @param  page          The page of analysts.
+     * @param  count         True to include the total number of analysts in the list.
+     * @param  tier          The logged-in user's tier.
+     * @param  fields        The fields to write (see AnalystFieldPolicy).
+     * @param  others        Other fields to add after the page's (e.g. links).
+     * @param  smile         True for Smile, false for text JSON.
+     * @param  read          The version of the analysts' JSON taken before the page was read
+     *                       (see AnalystJsonCache.getVersion).
+     * @return byte[]  The page as UTF-8 JSON or Smile.
+     */
+    public static byte[] getPageAsJson(ListPage<Analyst> page, boolean count, AnalystFieldPolicy.Tier tier,
+                                       long fields, ObjectNode others, boolean smile, long read) {
         ObjectNode result = Json.newObject();
-        ArrayNode analystNodes = result.arrayNode();
-        for (Analyst analyst : analysts) {
-            ObjectNode analystResult = analyst.toJson(loggedInUser);
-            analystNodes.add(analystResult);
+        if (count && page.getTotalRowCount() >= 0) {
+            result.put("totalRowCount", page.getTotalRowCount());
         }
-        result.put("analysts", analystNodes);
-        return result;
+        if (page.getPrevCursor() != null) {
+            result.put("prevCursor", page.getPrevCursor());
+        }
+        if (page.getNextCursor() != null) {
+            result.put("nextCursor", page.getNextCursor());
+        }
+        result.putAll(others);
+        return AnalystJsonCache.toJson("analysts", page.getList(), tier, fields, result, smile, read);
     }
 
 
@@ -353,103 +624,34 @@ public class Analyst extends Model {
      * @return ObjectNode  The analyst as a JSON object node.
      */
     public ObjectNode toJson(User loggedInUser) {
+        return toJson(AnalystFieldPolicy.Tier.of(loggedInUser));
+    }
+
+
+    /**
+     * Converts the analyst to JSON, including only the fields the tier of user can see (see AnalystFieldPolicy).
+     *
+     * @param  tier  The logged-in user's tier.
+     * @return ObjectNode  The analyst as a JSON object node.
+     */
+    public ObjectNode toJson(AnalystFieldPolicy.Tier tier) {
+        return toJson(tier, AnalystFieldPolicy.ALL);
+    }
+
+
+    /**
+     * Converts the analyst to JSON, including only the fields of a fieldset that the tier of user can see.
+     *
+     * @param  tier    The logged-in user's tier.
+     * @param  fields  The fieldset (see AnalystFieldPolicy).
+     * @return ObjectNode  The analyst as a JSON object node.
+     */
+    public ObjectNode toJson(AnalystFieldPolicy.Tier tier, long fields) {
         ObjectNode analystNode = Json.newObject();
         if (analystId == null) {
             return analystNode;
         }
-
-        analystNode.put("analystId", analystId.toString());
-        if (salutation != null) { // Non-required fields may be null
-            analystNode.put("salutation", salutation);
-        }
-        analystNode.put("firstname", firstname);
-        analystNode.put("lastname", lastname);
-        if (rank != null) {
-            analystNode.put("rank", rank.toJson());
-        }
-        analystNode.put("primaryDesk", primaryDesk.toJson());
-        if (status != null) {
-            analystNode.put("status", status.toJson());
-        }
-        if (mobile != null) {
-            analystNode.put("mobile", mobile);
-        }
-        if (phone != null && loggedInUser.isAdminOrManager()) { // Include if admin user or manager
-            analystNode.put("phone", phone);
-        }
-        if (email != null) {
-            analystNode.put("email", email);
-        }
-        if (emailAlternate != null && loggedInUser.isAdminOrManager()) { // Include if admin user or manager
-            analystNode.put("emailAlternate", emailAlternate);
-        }
-        if (paypalAccountEmail != null && loggedInUser.isAdminOrManagerOrStaff()) { // Include if admin user, manager or staff
-            analystNode.put("paypalAccountEmail", paypalAccountEmail);
-        }
-        if (emailverified != null) {
-            analystNode.put("emailverified", emailverified.toString());
-        }
-        if (phoneVerified != null) {
-            analystNode.put("phoneVerified", phoneVerified.toString());
-        }
-        if (contractSigned != null) {
-            analystNode.put("contractSigned", contractSigned.toString());
-        }
-        if (wikiUsername != null) {
-            analystNode.put("wikiUsername", wikiUsername);
-        }
-        if (skype != null) {
-            analystNode.put("skype", skype);
-        }
-        if (highriseAccount != null) {
-            analystNode.put("highriseAccount", highriseAccount);
-        }
-        if (loggedInUser.isAdminOrManagerOrStaff()) { // Include address fields if admin user, manager or staff
-            if (address1 != null) {
-                analystNode.put("address1", address1);
-            }
-            if (address2 != null) {
-                analystNode.put("address2", address2);
-            }
-            if (city != null) {
-                analystNode.put("city", city);
-            }
-            if (state != null) {
-                analystNode.put("state", state);
-            }
-            if (zip != null) {
-                analystNode.put("zip", zip);
-            }
-            if (country != null) {
-                analystNode.put("country", country);
-            }
-            if (countryOfResidence != null) {
-                analystNode.put("countryOfResidence", countryOfResidence);
-            }
-        }
-        if (positionDescription != null) {
-            analystNode.put("positionDescription", positionDescription);
-        }
-        if (academic != null) {
-            analystNode.put("academic", academic);
-        }
-        if (expertise != null) {
-            analystNode.put("expertise", expertise);
-        }
-        if (biography != null) {
-            analystNode.put("biography", biography);
-        }
-        if (createOn != null) {
-            analystNode.put("createOn", Utils.formatTimestamp(createOn));
-        }
-        analystNode.put("desks", getDesksAsJsonArray(analystNode));
-        analystNode.put("noteList", getNotesAsJsonArray(analystNode));
-        if (profileImage != null) {
-            analystNode.put("profileImage", profileImage.toJson());
-        }
-        if (cvDocument != null) {
-            analystNode.put("cvDocument", cvDocument.toJson());
-        }
+        AnalystFieldPolicy.write(tier, fields, this, analystNode);
         return analystNode;
     }
 
@@ -472,7 +674,7 @@ public class Analyst extends Model {
      * @param  analystNode  The analyst as a JSON ObjectNode.
      * @return ArrayNode  The analyst's desks as a JSON array node.
      */
-    private ArrayNode getDesksAsJsonArray(ObjectNode analystNode) {
+    ArrayNode getDesksAsJsonArray(ObjectNode analystNode) {
         ArrayNode deskNodes = analystNode.arrayNode();
         for (Desk desk : desks) {
             ObjectNode deskNode = desk.toJson();
@@ -500,7 +702,7 @@ public class Analyst extends Model {
      * @param  analystNode  The analyst as a JSON ObjectNode.
      * @return ArrayNode  The analyst's notes as a JSON array node.
      */
-    private ArrayNode getNotesAsJsonArray(ObjectNode analystNode) {
+    ArrayNode getNotesAsJsonArray(ObjectNode analystNode) {
         ArrayNode noteNodes = analystNode.arrayNode();
         for (Note note : noteList) {
             ObjectNode noteNode = note.toJson();
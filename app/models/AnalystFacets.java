@@ -0,0 +1,124 @@
+package models;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.libs.Json;
+
+import java.util.Map;
+
+/**
+ * The number of analysts per primary desk, status and rank in the current analyst list.
+ * Counts come from the in-memory bitsets in AnalystIndex, so no GROUP BY queries are run.
+ * Each facet's counts ignore its own criterion, so the other desks' (statuses', ranks') counts are still shown.
+ *
+ * Date:        18/10/26
+ * Time:        04:49
+ *
+ * @version     1.0
+ */
+public class AnalystFacets {
+
+    private final Map<Long,Integer> desks;
+    private final Map<Long,Integer> statuses;
+    private final Map<Long,Integer> ranks;
+
+
+    /**
+     * Constructor.
+     *
+     * @param desks     The number of analysts per desk id.
+     * @param statuses  The number of analysts per status id.
+     * @param ranks     The number of analysts per rank id.
+     */
+    private AnalystFacets(Map<Long,Integer> desks, Map<Long,Integer> statuses, Map<Long,Integer> ranks) {
+        this.desks = desks;
+        this.statuses = statuses;
+        this.ranks = ranks;
+    }
+
+
+    /**
+     * Counts the analysts in a list per desk, status and rank.
+     * Each facet ignores its own criterion, so the other choices' counts are still shown when one is chosen.
+     *
+     * @param criteria  The list criteria.
+     * @return AnalystFacets  The counts.
+     */
+    public static AnalystFacets compute(AnalystQuery criteria) {
+        return new AnalystFacets(AnalystIndex.countDesks(criteria.evaluate(AnalystQuery.Dimension.DESK)),
+                                 AnalystIndex.countStatuses(criteria.evaluate(AnalystQuery.Dimension.STATUS)),
+                                 AnalystIndex.countRanks(criteria.evaluate(AnalystQuery.Dimension.RANK)));
+    }
+
+
+    /**
+     * Returns the number of analysts with a primary desk.
+     *
+     * @param deskId  The desk id.
+     * @return int    The number of analysts.
+     */
+    public int getDeskCount(Long deskId) {
+        Integer count = desks.get(deskId);
+        return (count == null) ? (0) : (count);
+    }
+
+
+    /**
+     * Returns the number of analysts with a status.
+     *
+     * @param statusId  The status id.
+     * @return int      The number of analysts.
+     */
+    public int getStatusCount(Long statusId) {
+        Integer count = statuses.get(statusId);
+        return (count == null) ? (0) : (count);
+    }
+
+
+    /**
+     * Returns the number of analysts with a rank.
+     *
+     * @param rankId  The rank id.
+     * @return int    The number of analysts.
+     */
+    public int getRankCount(Long rankId) {
+        Integer count = ranks.get(rankId);
+        return (count == null) ? (0) : (count);
+    }
+
+
+    /**
+     * Converts the counts to JSON, with the names of the desks, statuses and ranks.
+     *
+     * @return ObjectNode  The counts as a JSON object node.
+     */
+    public ObjectNode toJson() {
+        ObjectNode result = Json.newObject();
+        ArrayNode deskNodes = result.arrayNode();
+        for (Desk desk : Desk.getAll()) {
+            ObjectNode deskNode = desk.toJson();
+            deskNode.put("count", getDeskCount(desk.deskId));
+            deskNodes.add(deskNode);
+        }
+        result.put("desks", deskNodes);
+
+        ArrayNode statusNodes = result.arrayNode();
+        for (Status status : Status.getAll()) {
+            ObjectNode statusNode = status.toJson();
+            statusNode.put("count", getStatusCount(status.statusId));
+            statusNodes.add(statusNode);
+        }
+        result.put("statuses", statusNodes);
+
+        ArrayNode rankNodes = result.arrayNode();
+        for (Rank rank : Rank.getAll()) {
+            ObjectNode rankNode = rank.toJson();
+            rankNode.put("count", getRankCount(rank.id));
+            rankNodes.add(rankNode);
+        }
+        result.put("ranks", rankNodes);
+        return result;
+    }
+
+
+}
@@ -0,0 +1,670 @@
+package models;
+
+import com.avaje.ebean.FetchConfig;
+import com.avaje.ebean.Query;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import utils.Utils;
+
+/**
+ * Declares which analyst fields each kind of user may see and edit.
+ * Each field names the lowest tier that can see it and the lowest tier that can edit it; the declarations are
+ * compiled once, when the class loads, into a visible mask and an editable mask per tier.
+ * Analyst.toJson writes the visible fields and Analysts.update copies back the fields the user may not edit,
+ * so the logged-in user's roles are resolved once per request rather than per field or per analyst.
+ *
+ * A request can also ask for a subset of the fields (a fieldset, held as a mask like the tier masks): select() then
+ * loads only the fieldset's columns and relationships, and write() writes only its fields. Large text (LOB) fields
+ * and relationships (desks, notes and files) are left out of the default fieldsets, so they're only read when named.
+ *
+ * Date:        18/10/26
+ * Time:        04:41
+ *
+ * @version     1.0
+ */
+public final class AnalystFieldPolicy {
+
+
+    /**
+     * Kinds of user, from most to least privileged.
+     */
+    public enum Tier {
+        ADMIN_OR_MANAGER, STAFF, OTHER;
+
+        /**
+         * Returns the user's tier.
+         *
+         * @param user   The logged-in user.
+         * @return Tier  The tier.
+         */
+        public static Tier of(User user) {
+            return of(user.getRoles());
+        }
+
+        /**
+         * Returns the tier for a role bitmask.
+         *
+         * @param roles  The role bitmask (see User.ROLE_ADMIN etc).
+         * @return Tier  The tier.
+         */
+        public static Tier of(int roles) {
+            if ((roles & (User.ROLE_ADMIN | User.ROLE_MANAGER)) != 0) {
+                return ADMIN_OR_MANAGER;
+            } else if ((roles & User.ROLE_STAFF) != 0) {
+                return STAFF;
+            } else {
+                return OTHER;
+            }
+        }
+    }
+
+
+    /**
+     * How a field is loaded from the DB.
+     */
+    public enum Kind {
+        COLUMN,         // A column of the analyst table
+        LOB,            // A large text column, only loaded when asked for
+        REFERENCE,      // A many-to-one reference (e.g. the rank), fetched with a join
+        RELATIONSHIP    // A related collection or file, only loaded when asked for
+    }
+
+
+    /**
+     * Analyst fields in JSON order, each with the lowest tier that can see it, the lowest tier that can edit it and
+     * how it's loaded. Each name is the analyst property the field is loaded from, and which copy restores
+     * from the stored analyst on update when the user's tier can't edit it.
+     */
+    public enum Field {
+        ANALYST_ID("analystId", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.analystId.toString());
+            }
+            void copy(Analyst from, Analyst to) {
+                to.analystId = from.analystId;
+            }
+        },
+        SALUTATION("salutation", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.salutation != null) {
+                    node.put(name, a.salutation);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.salutation = from.salutation;
+            }
+        },
+        FIRSTNAME("firstname", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.firstname);
+            }
+            void copy(Analyst from, Analyst to) {
+                to.firstname = from.firstname;
+            }
+        },
+        LASTNAME("lastname", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.lastname);
+            }
+            void copy(Analyst from, Analyst to) {
+                to.lastname = from.lastname;
+            }
+        },
+        RANK("rank", Tier.OTHER, Tier.STAFF, Kind.REFERENCE) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.rank != null) {
+                    node.put(name, a.rank.toJson());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.rank = from.rank;
+            }
+        },
+        PRIMARY_DESK("primaryDesk", Tier.OTHER, Tier.OTHER, Kind.REFERENCE) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.primaryDesk.toJson());
+            }
+            void copy(Analyst from, Analyst to) {
+                to.primaryDesk = from.primaryDesk;
+            }
+        },
+        STATUS("status", Tier.OTHER, Tier.OTHER, Kind.REFERENCE) { // Other users have a further restriction, see merge()
+            void write(Analyst a, ObjectNode node) {
+                if (a.status != null) {
+                    node.put(name, a.status.toJson());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.status = from.status;
+            }
+        },
+        MOBILE("mobile", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.mobile != null) {
+                    node.put(name, a.mobile);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.mobile = from.mobile;
+            }
+        },
+        PHONE("phone", Tier.ADMIN_OR_MANAGER, Tier.ADMIN_OR_MANAGER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.phone != null) {
+                    node.put(name, a.phone);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.phone = from.phone;
+            }
+        },
+        EMAIL("email", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.email != null) {
+                    node.put(name, a.email);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.email = from.email;
+            }
+        },
+        EMAIL_ALTERNATE("emailAlternate", Tier.ADMIN_OR_MANAGER, Tier.ADMIN_OR_MANAGER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.emailAlternate != null) {
+                    node.put(name, a.emailAlternate);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.emailAlternate = from.emailAlternate;
+            }
+        },
+        PAYPAL_ACCOUNT_EMAIL("paypalAccountEmail", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.paypalAccountEmail != null) {
+                    node.put(name, a.paypalAccountEmail);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.paypalAccountEmail = from.paypalAccountEmail;
+            }
+        },
+        EMAIL_VERIFIED("emailverified", Tier.OTHER, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.emailverified != null) {
+                    node.put(name, a.emailverified.toString());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.emailverified = from.emailverified;
+            }
+        },
+        PHONE_VERIFIED("phoneVerified", Tier.OTHER, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.phoneVerified != null) {
+                    node.put(name, a.phoneVerified.toString());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.phoneVerified = from.phoneVerified;
+            }
+        },
+        CONTRACT_SIGNED("contractSigned", Tier.OTHER, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.contractSigned != null) {
+                    node.put(name, a.contractSigned.toString());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.contractSigned = from.contractSigned;
+            }
+        },
+        WIKI_USERNAME("wikiUsername", Tier.OTHER, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.wikiUsername != null) {
+                    node.put(name, a.wikiUsername);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.wikiUsername = from.wikiUsername;
+            }
+        },
+        SKYPE("skype", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.skype != null) {
+                    node.put(name, a.skype);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.skype = from.skype;
+            }
+        },
+        HIGHRISE_ACCOUNT("highriseAccount", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.highriseAccount != null) {
+                    node.put(name, a.highriseAccount);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.highriseAccount = from.highriseAccount;
+            }
+        },
+        ADDRESS1("address1", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.address1 != null) {
+                    node.put(name, a.address1);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.address1 = from.address1;
+            }
+        },
+        ADDRESS2("address2", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.address2 != null) {
+                    node.put(name, a.address2);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.address2 = from.address2;
+            }
+        },
+        CITY("city", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.city != null) {
+                    node.put(name, a.city);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.city = from.city;
+            }
+        },
+        STATE("state", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.state != null) {
+                    node.put(name, a.state);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.state = from.state;
+            }
+        },
+        ZIP("zip", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.zip != null) {
+                    node.put(name, a.zip);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.zip = from.zip;
+            }
+        },
+        COUNTRY("country", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.country != null) {
+                    node.put(name, a.country);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.country = from.country;
+            }
+        },
+        COUNTRY_OF_RESIDENCE("countryOfResidence", Tier.STAFF, Tier.STAFF, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.countryOfResidence != null) {
+                    node.put(name, a.countryOfResidence);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.countryOfResidence = from.countryOfResidence;
+            }
+        },
+        POSITION_DESCRIPTION("positionDescription", Tier.OTHER, Tier.OTHER, Kind.LOB) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.positionDescription != null) {
+                    node.put(name, a.positionDescription);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.positionDescription = from.positionDescription;
+            }
+        },
+        ACADEMIC("academic", Tier.OTHER, Tier.OTHER, Kind.LOB) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.academic != null) {
+                    node.put(name, a.academic);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.academic = from.academic;
+            }
+        },
+        EXPERTISE("expertise", Tier.OTHER, Tier.OTHER, Kind.LOB) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.expertise != null) {
+                    node.put(name, a.expertise);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.expertise = from.expertise;
+            }
+        },
+        BIOGRAPHY("biography", Tier.OTHER, Tier.OTHER, Kind.LOB) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.biography != null) {
+                    node.put(name, a.biography);
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.biography = from.biography;
+            }
+        },
+        CREATE_ON("createOn", Tier.OTHER, Tier.OTHER, Kind.COLUMN) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.createOn != null) {
+                    node.put(name, Utils.formatTimestamp(a.createOn));
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.createOn = from.createOn;
+            }
+        },
+        DESKS("desks", Tier.OTHER, Tier.OTHER, Kind.RELATIONSHIP) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.getDesksAsJsonArray(node));
+            }
+            void copy(Analyst from, Analyst to) {
+                to.desks = from.desks;
+            }
+        },
+        NOTE_LIST("noteList", Tier.OTHER, Tier.OTHER, Kind.RELATIONSHIP) {
+            void write(Analyst a, ObjectNode node) {
+                node.put(name, a.getNotesAsJsonArray(node));
+            }
+            void copy(Analyst from, Analyst to) {
+                to.noteList = from.noteList;
+            }
+        },
+        PROFILE_IMAGE("profileImage", Tier.OTHER, Tier.OTHER, Kind.RELATIONSHIP) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.profileImage != null) {
+                    node.put(name, a.profileImage.toJson());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.profileImage = from.profileImage;
+            }
+        },
+        CV_DOCUMENT("cvDocument", Tier.OTHER, Tier.OTHER, Kind.RELATIONSHIP) {
+            void write(Analyst a, ObjectNode node) {
+                if (a.cvDocument != null) {
+                    node.put(name, a.cvDocument.toJson());
+                }
+            }
+            void copy(Analyst from, Analyst to) {
+                to.cvDocument = from.cvDocument;
+            }
+        };
+
+        public final String name;
+        final Tier          visibleTo;  // Lowest tier that can see the field
+        final Tier          editableBy; // Lowest tier that can edit the field
+        final Kind          kind;       // How the field is loaded
+
+        Field(String name, Tier visibleTo, Tier editableBy, Kind kind) {
+            this.name = name;
+            this.visibleTo = visibleTo;
+            this.editableBy = editableBy;
+            this.kind = kind;
+        }
+
+        /**
+         * Writes the field to the analyst's JSON (non-required fields are left out when null).
+         *
+         * @param a     The analyst.
+         * @param node  The analyst's JSON.
+         */
+        abstract void write(Analyst a, ObjectNode node);
+
+        /**
+         * Copies the field's value between analysts, e.g. to restore a value the user can't edit on update.
+         *
+         * @param from  The analyst to copy from.
+         * @param to    The analyst to copy to.
+         */
+        abstract void copy(Analyst from, Analyst to);
+    }
+
+
+    // Per-tier masks, indexed by tier ordinal, with bit n set for the field with ordinal n
+    private static final Field[] FIELDS   = Field.values();
+    private static final long[]  visible  = new long[Tier.values().length];
+    private static final long[]  editable = new long[Tier.values().length];
+
+    private static final int     BATCH_SIZE = 100; // Ids per query when loading relationships
+
+    // Fieldsets
+    public static final long    ALL     = (1L << FIELDS.length) - 1;   // Every field
+    public static final long    SUMMARY = mask(Kind.COLUMN) | mask(Kind.REFERENCE); // No LOBs or relationships
+    public static final long    LIST    = mask(Field.ANALYST_ID, Field.FIRSTNAME, Field.LASTNAME, // The list page
+                                               Field.PRIMARY_DESK, Field.RANK, Field.STATUS);
+
+    static {
+        for (Tier tier : Tier.values()) {
+            for (Field field : FIELDS) {
+                if (tier.ordinal() <= field.visibleTo.ordinal()) {
+                    visible[tier.ordinal()] |= 1L << field.ordinal();
+                }
+                if (tier.ordinal() <= field.editableBy.ordinal()) {
+                    editable[tier.ordinal()] |= 1L << field.ordinal();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Static methods only.
+     */
+    private AnalystFieldPolicy() {
+    }
+
+
+    /**
+     * Returns whether a tier can see a field.
+     *
+     * @param tier   The tier.
+     * @param field  The field.
+     * @return boolean  True if visible.
+     */
+    public static boolean isVisible(Tier tier, Field field) {
+        return (visible[tier.ordinal()] & (1L << field.ordinal())) != 0;
+    }
+
+
+    /**
+     * Returns whether a tier can edit a field.
+     *
+     * @param tier   The tier.
+     * @param field  The field.
+     * @return boolean  True if editable.
+     */
+    public static boolean isEditable(Tier tier, Field field) {
+        return (editable[tier.ordinal()] & (1L << field.ordinal())) != 0;
+    }
+
+
+    /**
+     * Writes the fields of a fieldset that the tier can see to the analyst's JSON, in field order.
+     *
+     * @param tier     The tier.
+     * @param fields   The fieldset.
+     * @param analyst  The analyst.
+     * @param node     The analyst's JSON.
+     */
+    static void write(Tier tier, long fields, Analyst analyst, ObjectNode node) {
+        long mask = visible[tier.ordinal()] & fields;
+        for (Field field : FIELDS) {
+            if ((mask & (1L << field.ordinal())) != 0) {
+                field.write(analyst, node);
+            }
+        }
+    }
+
+
+    /**
+     * Returns the fieldset requested by the fields and include parameters, limited to the fields the tier can see.
+     * fields lists the field names wanted instead of the defaults and include lists extra fields, typically
+     * relationships, e.g. fields=firstname,lastname,status&include=desks. Unknown names are ignored and the
+     * analyst id is always included.
+     *
+     * @param tier      The tier.
+     * @param fields    Comma-separated field names, or null or empty for the defaults.
+     * @param include   Comma-separated field names to add, or null or empty.
+     * @param defaults  The fieldset used when no fields are named.
+     * @return long     The fieldset.
+     */
+    public static long parse(Tier tier, String fields, String include, long defaults) {
+        long mask = (fields == null || fields.trim().isEmpty()) ? (defaults) : (parseNames(fields));
+        mask |= parseNames(include) | mask(Field.ANALYST_ID);
+        return mask & visible[tier.ordinal()];
+    }
+
+
+    /**
+     * Returns the fields needed to sort on a list column, so a keyset cursor can be made from the loaded analysts.
+     *
+     * @param sortBy  The sort column (one of Analyst.SORT_COLUMNS).
+     * @return long   The fieldset.
+     */
+    public static long forSort(String sortBy) {
+        switch (sortBy) {
+            case "firstname":
+                return mask(Field.FIRSTNAME);
+            case "primaryDesk.name":
+                return mask(Field.PRIMARY_DESK);
+            case "rank.name":
+                return mask(Field.RANK);
+            case "status.statusName":
+                return mask(Field.STATUS);
+            case "analystId":
+                return mask(Field.ANALYST_ID);
+            default:
+                return mask(Field.LASTNAME);
+        }
+    }
+
+
+    /**
+     * Limits an analyst query to a fieldset: only the fieldset's columns are selected, its references (e.g. the rank)
+     * and files are joined and its collections are fetched one level at a time, each level by a single query on the
+     * ids of the level above: the desks, the notes (with their users joined), then those users' groups.
+     * Other fields are left unloaded (reading one loads the analyst), so the number of queries doesn't grow with the
+     * number of analysts as long as the fieldset covers what's read.
+     *
+     * @param query     The query.
+     * @param fields    The fieldset.
+     * @return Query<Analyst>  The query.
+     */
+    public static Query<Analyst> select(Query<Analyst> query, long fields) {
+        StringBuilder columns = new StringBuilder();
+        for (Field field : FIELDS) {
+            if ((fields & (1L << field.ordinal())) != 0 && (field.kind == Kind.COLUMN || field.kind == Kind.LOB)) {
+                columns.append((columns.length() == 0) ? ("") : (",")).append(field.name);
+            }
+        }
+        query.select((columns.length() == 0) ? (Field.ANALYST_ID.name) : (columns.toString()));
+        for (Field field : FIELDS) {
+            if ((fields & (1L << field.ordinal())) == 0) {
+                continue;
+            }
+            if (field == Field.DESKS) {
+                query.fetch(field.name, new FetchConfig().query(BATCH_SIZE));
+            } else if (field == Field.NOTE_LIST) {
+                query.fetch(field.name, new FetchConfig().query(BATCH_SIZE));
+                query.fetch(field.name + ".user");
+                query.fetch(field.name + ".updatedBy");
+                query.fetch(field.name + ".user.groups", new FetchConfig().query(BATCH_SIZE));
+                query.fetch(field.name + ".updatedBy.groups", new FetchConfig().query(BATCH_SIZE));
+            } else if (field.kind == Kind.REFERENCE || field.kind == Kind.RELATIONSHIP) {
+                query.fetch(field.name);
+            }
+        }
+        return query;
+    }
+
+
+    /**
+     * Returns the fieldset of the named fields.
+     *
+     * @param names   Comma-separated field names (may be null).
+     * @return long   The fieldset.
+     */
+    private static long parseNames(String names) {
+        long mask = 0L;
+        if (names != null) {
+            for (String name : names.split(",")) {
+                for (Field field : FIELDS) {
+                    if (field.name.equals(name.trim())) {
+                        mask |= 1L << field.ordinal();
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+
+    /**
+     * Returns the fieldset of the given fields.
+     *
+     * @param fields  The fields.
+     * @return long   The fieldset.
+     */
+    public static long mask(Field... fields) {
+        long mask = 0L;
+        for (Field field : fields) {
+            mask |= 1L << field.ordinal();
+        }
+        return mask;
+    }
+
+
+    /**
+     * Returns the fieldset of the fields of a kind.
+     *
+     * @param kind    The kind.
+     * @return long   The fieldset.
+     */
+    private static long mask(Kind kind) {
+        long mask = 0L;
+        for (Field field : Field.values()) {
+            if (field.kind == kind) {
+                mask |= 1L << field.ordinal();
+            }
+        }
+        return mask;
+    }
+
+
+    /**
+     * Restores the fields the tier can't edit from the stored analyst, so values supplied for them are ignored.
+     * Other users also can't set a status of deleted or removed, nor change one.
+     *
+     * @param tier        The tier.
+     * @param existing    The analyst as stored in the DB.
+     * @param newAnalyst  The analyst bound from the request.
+     */
+    public static void merge(Tier tier, Analyst existing, Analyst newAnalyst) {
+        long mask = ~editable[tier.ordinal()];
+        for (Field field : FIELDS) {
+            if ((mask & (1L << field.ordinal())) != 0) {
+                field.copy(existing, newAnalyst);
+            }
+        }
+        if (tier == Tier.OTHER &&
+            (newAnalyst.status.isDeletedOrRemoved() || existing.status.isDeletedOrRemoved())) {
+            newAnalyst.status = existing.status;
+        }
+    }
+
+
+}
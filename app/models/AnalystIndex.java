@@ -0,0 +1,456 @@
+package models;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import play.Logger;
+import play.libs.Json;
+import utils.BitSetIndex;
+import utils.KeysetCursor;
+import utils.PrefixIndex;
+import utils.SortedIdIndex;
+import utils.TextIndex;
+import utils.TrigramIndex;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory indexes over the analyst table, built when the application starts (see SearchIndexPlugin)
+ * and kept up to date as analysts are saved and deleted.
+ *
+ * Profiles: a full-text index over positionDescription, biography, academic and expertise, so staffing searches
+ * don't scan the @Lob columns with ilike.
+ * Names: a trigram index over "firstname lastname", so substring searches on names don't need a leading-wildcard
+ * LIKE, which can't use an index.
+ * Suggestions: a prefix index over firstname, lastname and full name, for name autocomplete. Suggestions hold their
+ * primary desk's id, and its name is looked up when they're written, so renaming a desk renames it in every suggestion.
+ * Desks, statuses and ranks: a bitset of analyst ids per primary desk, status and rank, for facet counts.
+ * Flags: a bitset of analyst ids per value (1 for true, 0 for false or null) of emailverified, phoneVerified and
+ * contractSigned. With the bitsets above, these let list criteria be combined by intersecting id sets (see AnalystQuery).
+ * Orderings: the analyst ids sorted by each of the list's sort columns, so a sorted page (offset or keyset) is a slice
+ * of ids rather than a join and ORDER BY. Renaming a desk, status or rank re-sorts only its analysts.
+ *
+ * Date:        18/10/26
+ * Time:        04:45
+ *
+ * @version     1.0
+ */
+public class AnalystIndex {
+
+    private static final TextIndex                   profiles       = new TextIndex();
+    private static final TrigramIndex                names          = new TrigramIndex();
+    private static final PrefixIndex<Suggestion>     suggestions    = new PrefixIndex<Suggestion>();
+    private static final BitSetIndex                 desks          = new BitSetIndex();
+    private static final BitSetIndex                 statuses       = new BitSetIndex();
+    private static final BitSetIndex                 ranks          = new BitSetIndex();
+    private static final BitSetIndex                 emailVerified  = new BitSetIndex();
+    private static final BitSetIndex                 phoneVerified  = new BitSetIndex();
+    private static final BitSetIndex                 contractSigned = new BitSetIndex();
+    private static final BitSet                      all            = new BitSet(); // Every analyst id (synchronized)
+    private static final Map<String,SortedIdIndex>   orderings      = new HashMap<String,SortedIdIndex>();
+    private static final Map<Long,String>            deskNames      = new ConcurrentHashMap<Long,String>(); // By id
+
+    static {
+        for (String sortBy : Analyst.SORT_COLUMNS) {
+            orderings.put(sortBy, new SortedIdIndex());
+        }
+    }
+
+
+    /**
+     * Builds the indexes from the DB.
+     */
+    public static void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Analyst> analysts = Analyst.find.select("analystId, firstname, lastname, " +
+                                                         "positionDescription, biography, academic, expertise, " +
+                                                         "emailverified, phoneVerified, contractSigned")
+                                             .fetch("primaryDesk", "name")
+                                             .fetch("status", "statusName")
+                                             .fetch("rank", "name")
+                                             .findList();
+        profiles.clear();
+        names.clear();
+        suggestions.clear();
+        deskNames.clear();
+        desks.clear();
+        statuses.clear();
+        ranks.clear();
+        emailVerified.clear();
+        phoneVerified.clear();
+        contractSigned.clear();
+        synchronized (all) {
+            all.clear();
+        }
+        for (SortedIdIndex ordering : orderings.values()) {
+            ordering.clear();
+        }
+        for (Analyst analyst : analysts) {
+            index(analyst);
+        }
+        Logger.info("Indexed " + analysts.size() + " analysts in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+    /**
+     * Re-indexes an analyst after it has been saved, reading it back so the indexes match the DB.
+     *
+     * @param analystId  The analyst id.
+     */
+    public static void refresh(Long analystId) {
+        Analyst analyst = Analyst.find.byId(analystId);
+        if (analyst == null) {
+            remove(analystId);
+        } else {
+            index(analyst);
+        }
+    }
+
+
+    /**
+     * Removes an analyst from the indexes.
+     *
+     * @param analystId  The analyst id.
+     */
+    public static void remove(Long analystId) {
+        profiles.remove(analystId);
+        names.remove(analystId);
+        suggestions.remove(analystId);
+        desks.remove(analystId);
+        statuses.remove(analystId);
+        ranks.remove(analystId);
+        emailVerified.remove(analystId);
+        phoneVerified.remove(analystId);
+        contractSigned.remove(analystId);
+        synchronized (all) {
+            all.clear(analystId.intValue());
+        }
+        for (SortedIdIndex ordering : orderings.values()) {
+            ordering.remove(analystId);
+        }
+    }
+
+
+    /**
+     * Re-sorts the analysts with a desk as their primary desk after the desk has been renamed.
+     *
+     * @param desk  The desk.
+     */
+    public static void refreshDesk(Desk desk) {
+        deskNames.put(desk.deskId, desk.name);
+        resort("primaryDesk.name", desks.get(desk.deskId), desk.name);
+    }
+
+
+    /**
+     * Re-sorts the analysts with a status after the status has been renamed.
+     *
+     * @param status  The status.
+     */
+    public static void refreshStatus(Status status) {
+        resort("status.statusName", statuses.get(status.statusId), status.statusName);
+    }
+
+
+    /**
+     * Re-sorts the analysts with a rank after the rank has been renamed.
+     *
+     * @param rank  The rank.
+     */
+    public static void refreshRank(Rank rank) {
+        resort("rank.name", ranks.get(rank.id), rank.name);
+    }
+
+
+    /**
+     * Finds the analysts whose profile text contains every word of the query.
+     *
+     * @param query        The query text.
+     * @return List<Long>  The analyst ids, most relevant first.
+     */
+    public static List<Long> searchProfiles(String query) {
+        return profiles.search(query);
+    }
+
+
+    /**
+     * Finds the analysts whose first or last name (or "firstname lastname") contains a substring, ignoring case.
+     *
+     * @param substring   The substring.
+     * @return Set<Long>  The analyst ids.
+     */
+    public static Set<Long> searchNames(String substring) {
+        return names.search(substring);
+    }
+
+
+    /**
+     * Finds the analysts whose first name, last name or full name starts with a prefix, ignoring case.
+     *
+     * @param prefix             The prefix.
+     * @param limit              The maximum number of suggestions.
+     * @return List<Suggestion>  The suggestions in name order.
+     */
+    public static List<Suggestion> suggest(String prefix, int limit) {
+        return suggestions.search(prefix, limit);
+    }
+
+
+    /**
+     * Returns the analysts whose primary desk is one of the given desks.
+     *
+     * @param deskIds  The desk ids.
+     * @return BitSet  The analyst ids.
+     */
+    public static BitSet byDesks(Iterable<Long> deskIds) {
+        return desks.getAny(deskIds);
+    }
+
+
+    /**
+     * Returns every analyst id.
+     *
+     * @return BitSet  A copy of the analyst ids.
+     */
+    public static BitSet getAll() {
+        synchronized (all) {
+            return (BitSet) all.clone();
+        }
+    }
+
+
+    /**
+     * Returns the analysts with a status.
+     *
+     * @param statusId  The status id.
+     * @return BitSet   The analyst ids.
+     */
+    public static BitSet byStatus(Long statusId) {
+        return statuses.get(statusId);
+    }
+
+
+    /**
+     * Returns the analysts with a rank.
+     *
+     * @param rankId    The rank id.
+     * @return BitSet   The analyst ids.
+     */
+    public static BitSet byRank(Long rankId) {
+        return ranks.get(rankId);
+    }
+
+
+    /**
+     * Returns the analysts whose email is (or isn't) verified.
+     *
+     * @param verified  True for verified, false for not verified (or not set).
+     * @return BitSet   The analyst ids.
+     */
+    public static BitSet byEmailVerified(boolean verified) {
+        return emailVerified.get(toFlag(verified));
+    }
+
+
+    /**
+     * Returns the analysts whose phone is (or isn't) verified.
+     *
+     * @param verified  True for verified, false for not verified (or not set).
+     * @return BitSet   The analyst ids.
+     */
+    public static BitSet byPhoneVerified(boolean verified) {
+        return phoneVerified.get(toFlag(verified));
+    }
+
+
+    /**
+     * Returns the analysts who have (or haven't) signed their contract.
+     *
+     * @param signed    True for signed, false for not signed (or not set).
+     * @return BitSet   The analyst ids.
+     */
+    public static BitSet byContractSigned(boolean signed) {
+        return contractSigned.get(toFlag(signed));
+    }
+
+
+    /**
+     * Returns a page of analyst ids in sort order.
+     *
+     * @param sortBy       The sort column (one of Analyst.SORT_COLUMNS).
+     * @param ascending    True for ascending order, false for descending.
+     * @param selection    Only include these analyst ids (null to include all).
+     * @param offset       The number of analysts to skip.
+     * @param limit        The maximum number of analysts.
+     * @return List<Long>  The analyst ids, in order.
+     */
+    public static List<Long> sortedSlice(String sortBy, boolean ascending, BitSet selection, int offset, int limit) {
+        return orderings.get(sortBy).slice(selection, ascending, offset, limit);
+    }
+
+
+    /**
+     * Returns the analyst ids next to a keyset cursor's position in sort order (see SortedIdIndex.seek).
+     *
+     * @param sortBy       The sort column (one of Analyst.SORT_COLUMNS).
+     * @param ascending    True for ascending order, false for descending.
+     * @param selection    Only include these analyst ids (null to include all).
+     * @param position     The cursor's position.
+     * @param limit        The maximum number of analysts.
+     * @return List<Long>  The analyst ids, in scan order.
+     */
+    public static List<Long> seek(String sortBy, boolean ascending, BitSet selection, KeysetCursor position,
+                                  int limit) {
+        // Ordering by analystId is by id alone (see index), so the cursor's value isn't used
+        String value = (sortBy.equals("analystId")) ? (null) : (position.value);
+        return orderings.get(sortBy).seek(selection, ascending, position.before, value, position.id, limit);
+    }
+
+
+    /**
+     * Counts analysts per primary desk.
+     *
+     * @param selection          Only count these analyst ids (null to count all).
+     * @return Map<Long,Integer> The number of analysts per desk id.
+     */
+    public static Map<Long,Integer> countDesks(BitSet selection) {
+        return desks.counts(selection);
+    }
+
+
+    /**
+     * Counts analysts per status.
+     *
+     * @param selection          Only count these analyst ids (null to count all).
+     * @return Map<Long,Integer> The number of analysts per status id.
+     */
+    public static Map<Long,Integer> countStatuses(BitSet selection) {
+        return statuses.counts(selection);
+    }
+
+
+    /**
+     * Counts analysts per rank.
+     *
+     * @param selection          Only count these analyst ids (null to count all).
+     * @return Map<Long,Integer> The number of analysts per rank id.
+     */
+    public static Map<Long,Integer> countRanks(BitSet selection) {
+        return ranks.counts(selection);
+    }
+
+
+    /**
+     * Adds or replaces an analyst in the indexes.
+     *
+     * @param analyst  The analyst.
+     */
+    private static void index(Analyst analyst) {
+        profiles.put(analyst.analystId, analyst.positionDescription, analyst.biography,
+                                        analyst.academic, analyst.expertise);
+        names.put(analyst.analystId, analyst.getFullName());
+        suggestions.put(analyst.analystId, new Suggestion(analyst),
+                        analyst.firstname, analyst.lastname, analyst.getFullName());
+        desks.put(analyst.analystId, (analyst.primaryDesk == null) ? (null) : (analyst.primaryDesk.deskId));
+        if (analyst.primaryDesk != null && analyst.primaryDesk.name != null) {
+            deskNames.put(analyst.primaryDesk.deskId, analyst.primaryDesk.name);
+        }
+        statuses.put(analyst.analystId, (analyst.status == null) ? (null) : (analyst.status.statusId));
+        ranks.put(analyst.analystId, (analyst.rank == null) ? (null) : (analyst.rank.id));
+        emailVerified.put(analyst.analystId, toFlag(Boolean.TRUE.equals(analyst.emailverified)));
+        phoneVerified.put(analyst.analystId, toFlag(Boolean.TRUE.equals(analyst.phoneVerified)));
+        contractSigned.put(analyst.analystId, toFlag(Boolean.TRUE.equals(analyst.contractSigned)));
+        synchronized (all) {
+            all.set(analyst.analystId.intValue());
+        }
+        for (Map.Entry<String,SortedIdIndex> entry : orderings.entrySet()) {
+            // Ordering by analystId is by id alone, which is the tie-break of every ordering
+            String value = (entry.getKey().equals("analystId")) ? (null) : (analyst.getSortValue(entry.getKey()));
+            entry.getValue().put(analyst.analystId, value);
+        }
+    }
+
+
+    /**
+     * Moves analysts to a new value in one of the orderings.
+     *
+     * @param sortBy    The sort column.
+     * @param ids       The analyst ids.
+     * @param value     The new value.
+     */
+    private static void resort(String sortBy, BitSet ids, String value) {
+        SortedIdIndex ordering = orderings.get(sortBy);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            ordering.put((long) id, value);
+        }
+    }
+
+
+    /**
+     * Converts a flag to the value it's indexed under.
+     *
+     * @param flag   The flag.
+     * @return Long  1 for true, 0 for false.
+     */
+    private static Long toFlag(boolean flag) {
+        return (flag) ? (1L) : (0L);
+    }
+
+
+    /**
+     * Returns a desk's name, reading it from the DB if no indexed analyst has the desk as their primary desk.
+     *
+     * @param deskId   The desk id.
+     * @return String  The name, or null if there's no such desk.
+     */
+    private static String getDeskName(Long deskId) {
+        String name = deskNames.get(deskId);
+        if (name == null) {
+            Desk desk = Desk.find.byId(deskId);
+            if (desk != null) {
+                name = desk.name;
+                deskNames.put(deskId, name);
+            }
+        }
+        return name;
+    }
+
+
+    /**
+     * An autocomplete suggestion: the analyst's id, full name and primary desk.
+     */
+    public static class Suggestion {
+        public final Long   analystId;
+        public final String name;
+        public final Long   primaryDeskId;
+
+        Suggestion(Analyst analyst) {
+            this.analystId = analyst.analystId;
+            this.name = analyst.getFullName();
+            this.primaryDeskId = (analyst.primaryDesk == null) ? (null) : (analyst.primaryDesk.deskId);
+        }
+
+        /**
+         * Converts the suggestion to JSON.
+         *
+         * @return ObjectNode  The suggestion as a JSON object node.
+         */
+        public ObjectNode toJson() {
+            ObjectNode result = Json.newObject();
+            result.put("analystId", analystId.toString());
+            result.put("name", name);
+            if (primaryDeskId != null) {
+                ObjectNode desk = Json.newObject();
+                desk.put("deskId", primaryDeskId.toString());
+                desk.put("name", getDeskName(primaryDeskId));
+                result.put("primaryDesk", desk);
+            }
+            return result;
+        }
+    }
+
+
+}
@@ -0,0 +1,148 @@
+package models;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import utils.JsonEncoding;
+import utils.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches each analyst's JSON as UTF-8 bytes and as a Smile fragment, per tier of user and fieldset
+ * (see AnalystFieldPolicy), so repeated reads of an analyst write no fields: a page of analysts is the cached
+ * fragments joined into an array, in either encoding (see JsonEncoding.join).
+ *
+ * Fragments are cached per (analyst id, tier, fieldset) and versions. Writing an analyst (including its desks and
+ * files) or one of its notes bumps the analyst's version; changing a desk, rank, status, user or group, which may
+ * appear in any analyst's JSON, bumps the version of them all. Fragments of an earlier version are no longer found
+ * and age out of the cache. Fragments are also re-written after a while, to pick up changes made outside
+ * the application.
+ *
+ * Callers take the version (see getVersion) before reading the analysts. An analyst read while a write to it
+ * (or to everything) was in progress may have the old fields, so its JSON isn't cached.
+ *
+ * Date:        18/10/26
+ * Time:        05:05
+ *
+ * @version     1.0
+ */
+public class AnalystJsonCache {
+
+    // Constants
+    private static final int            MAX_SIZE    = 5000;
+    private static final long           TTL         = 10L * 60L * 1000L; // 10 minutes
+
+    private static final LruCache<String,Fragment>      fragments   = new LruCache<String,Fragment>(MAX_SIZE, TTL);
+    private static final AtomicLong                     version     = new AtomicLong(); // Of all analysts
+    private static final AtomicLong                     sequence    = new AtomicLong(); // Source of analyst versions
+    private static final ConcurrentHashMap<Long,Long>   versions    = new ConcurrentHashMap<Long,Long>(); // Per analyst
+
+
+    /**
+     * Returns the version of all analysts' JSON, to be taken before the analysts are read and passed to get.
+     *
+     * @return long  The version.
+     */
+    public static long getVersion() {
+        return sequence.get();
+    }
+
+
+    /**
+     * Returns the analyst's JSON, from the cache if it's there.
+     *
+     * @param analyst  The analyst.
+     * @param tier     The logged-in user's tier.
+     * @param fields   The fieldset.
+     * @param smile    True for a Smile fragment (see JsonEncoding.toSmileFragment), false for text JSON.
+     * @param read     The version taken before the analyst was read (see getVersion).
+     * @return byte[]  The JSON as UTF-8 or Smile (not to be changed).
+     */
+    public static byte[] get(Analyst analyst, AnalystFieldPolicy.Tier tier, long fields, boolean smile, long read) {
+        if (analyst.analystId == null) { // A new analyst
+            ObjectNode node = analyst.toJson(tier, fields);
+            return (smile) ? (JsonEncoding.toSmileFragment(node)) : (JsonEncoding.toJson(node));
+        }
+        long allVersion = version.get();
+        Long analystVersion = versions.get(analyst.analystId);
+        String key = allVersion + "|" + analystVersion + "|" + analyst.analystId + "|" + tier + "|" + fields;
+        Fragment fragment = fragments.get(key);
+        if (fragment == null) {
+            fragment = new Fragment(analyst.toJson(tier, fields));
+            if (allVersion <= read && (analystVersion == null || analystVersion <= read)) { // Not written since
+                fragments.put(key, fragment);
+            }
+        }
+        return fragment.get(smile);
+    }
+
+
+    /**
+     * Returns a JSON object with an array of analysts, joined from their cached JSON, followed by other fields.
+     *
+     * @param name      The array's field name.
+     * @param analysts  The analysts.
+     * @param tier      The logged-in user's tier.
+     * @param fields    The fieldset.
+     * @param others    The other fields (may be empty).
+     * @param smile     True for Smile, false for text JSON.
+     * @param read      The version taken before the analysts were read (see getVersion).
+     * @return byte[]   The JSON as UTF-8 or Smile.
+     */
+    public static byte[] toJson(String name, List<Analyst> analysts, AnalystFieldPolicy.Tier tier, long fields,
+                                ObjectNode others, boolean smile, long read) {
+        List<byte[]> values = new ArrayList<byte[]>(analysts.size());
+        for (Analyst analyst : analysts) {
+            values.add(get(analyst, tier, fields, smile, read));
+        }
+        return JsonEncoding.join(smile, name, values, others);
+    }
+
+
+    /**
+     * Records that an analyst (or one of its desks, files or notes) was written, so its JSON is stale.
+     *
+     * @param analystId  The analyst id.
+     */
+    public static synchronized void changed(Long analystId) {
+        versions.put(analystId, sequence.incrementAndGet()); // A value no earlier version of the analyst had
+    }
+
+
+    /**
+     * Records that something in every analyst's JSON may have changed (e.g. a desk name), so it's all stale.
+     */
+    public static synchronized void changedAll() {
+        version.set(sequence.incrementAndGet()); // Later than any read that started before the change
+    }
+
+
+    /**
+     * Removes all cached JSON.
+     */
+    public static void clear() {
+        fragments.clear();
+    }
+
+
+    /**
+     * An analyst's JSON in both encodings.
+     */
+    private static class Fragment {
+        private final byte[]    json;
+        private final byte[]    smile;
+
+        Fragment(ObjectNode node) {
+            json = JsonEncoding.toJson(node);
+            smile = JsonEncoding.toSmileFragment(node);
+        }
+
+        byte[] get(boolean binary) {
+            return (binary) ? (smile) : (json);
+        }
+    }
+
+
+}
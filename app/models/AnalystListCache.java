@@ -0,0 +1,94 @@
+package models;
+
+import utils.ListPage;
+import utils.LruCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches pages of the analyst list, so repeated views of the same page (most often the default list and the popular
+ * desk filters) don't re-run the join, sort and count.
+ *
+ * Pages are cached per (page, page size, sortBy, order, cursor, counted, criteria, fieldset) and the analyst table's
+ * version.
+ * Saving, updating or deleting an analyst (which includes adding or removing its desks) or one of its notes bumps
+ * the version, so the cached pages are no longer found and the next view reflects the write straight away;
+ * old pages age out of the cache.
+ * Pages are also re-read after a while, to pick up any rows changed outside the application.
+ *
+ * Date:        18/10/26
+ * Time:        04:52
+ *
+ * @version     1.0
+ */
+public class AnalystListCache {
+
+    // Constants
+    private static final int    MAX_SIZE    = 500;
+    private static final long   TTL         = 5L * 60L * 1000L; // 5 minutes
+
+    private static final LruCache<String,ListPage<Analyst>> pages   = new LruCache<String,ListPage<Analyst>>(MAX_SIZE, TTL);
+    private static final AtomicLong                         version = new AtomicLong();
+
+
+    /**
+     * Returns the key of a page of the list at the current version.
+     *
+     * @param page       Page number (starts from 0).
+     * @param pageSize   Number of analysts per page.
+     * @param sortBy     The sort column.
+     * @param order      The sort order.
+     * @param cursor     The keyset cursor (may be empty).
+     * @param count      True if the page is counted.
+     * @param criteria   The list criteria.
+     * @param fields     The fields loaded (see AnalystFieldPolicy).
+     * @return String    The key.
+     */
+    public static String key(int page, int pageSize, String sortBy, String order, String cursor, boolean count,
+                             AnalystQuery criteria, long fields) {
+        return version.get() + "|" + page + "|" + pageSize + "|" + sortBy + "|" + order + "|" + cursor + "|" + count +
+               "|" + criteria.filter + "|" + criteria.search + "|" + criteria.query + "|" + criteria.statusId + "|" +
+               criteria.rankId + "|" + criteria.emailVerified + "|" + criteria.phoneVerified + "|" +
+               criteria.contractSigned + "|" + fields;
+    }
+
+
+    /**
+     * Returns a cached page.
+     *
+     * @param key                 The key (see key()).
+     * @return ListPage<Analyst>  The page, or null if not cached, expired or from an earlier version.
+     */
+    public static ListPage<Analyst> get(String key) {
+        return pages.get(key);
+    }
+
+
+    /**
+     * Caches a page.
+     *
+     * @param key    The key, taken before the page was read, so a write during the read isn't cached as current.
+     * @param page   The page.
+     */
+    public static void put(String key, ListPage<Analyst> page) {
+        pages.put(key, page);
+    }
+
+
+    /**
+     * Records that an analyst (or one of its desks or notes) was written, so cached pages are stale.
+     */
+    public static void changed() {
+        version.incrementAndGet();
+    }
+
+
+    /**
+     * Removes all cached pages.
+     */
+    public static void clear() {
+        pages.clear();
+    }
+
+
+}
@@ -0,0 +1,174 @@
+package models;
+
+import utils.BitSetIndex;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The criteria applied to the analyst list, which can be combined freely: a name search, a primary desk filter,
+ * a status, a rank, the verification flags, contractSigned and a profile query.
+ * The criteria are evaluated by intersecting the in-memory id sets in AnalystIndex, so the DB is only asked for
+ * the analysts on the page, by id.
+ *
+ * Date:        18/10/26
+ * Time:        04:52
+ *
+ * @version     1.0
+ */
+public class AnalystQuery {
+
+    /**
+     * Criteria that have facet counts, so a facet can leave out its own criterion.
+     */
+    public enum Dimension { DESK, STATUS, RANK }
+
+    public final String     filter;         // Primary desk name contains (empty for any)
+    public final String     search;         // First or last name contains (empty for any)
+    public final String     query;          // Profile text contains every word (empty for any)
+    public final Long       statusId;       // Null for any
+    public final Long       rankId;         // Null for any
+    public final Boolean    emailVerified;  // Null for any
+    public final Boolean    phoneVerified;  // Null for any
+    public final Boolean    contractSigned; // Null for any
+
+
+    /**
+     * Constructor.
+     *
+     * @param filter          Filter applied on primary desk name (empty for any).
+     * @param search          Search applied on first and last names (empty for any).
+     * @param query           Full-text query on the profile text (empty for any).
+     * @param statusId        The status id (null for any).
+     * @param rankId          The rank id (null for any).
+     * @param emailVerified   Whether the email is verified (null for any).
+     * @param phoneVerified   Whether the phone is verified (null for any).
+     * @param contractSigned  Whether the contract is signed (null for any).
+     */
+    public AnalystQuery(String filter, String search, String query, Long statusId, Long rankId,
+                        Boolean emailVerified, Boolean phoneVerified, Boolean contractSigned) {
+        this.filter = (filter == null) ? ("") : (filter);
+        this.search = (search == null) ? ("") : (search);
+        this.query = (query == null) ? ("") : (query);
+        this.statusId = statusId;
+        this.rankId = rankId;
+        this.emailVerified = emailVerified;
+        this.phoneVerified = phoneVerified;
+        this.contractSigned = contractSigned;
+    }
+
+
+    /**
+     * Returns criteria that select every analyst.
+     *
+     * @return AnalystQuery  The criteria.
+     */
+    public static AnalystQuery all() {
+        return new AnalystQuery("", "", "", null, null, null, null, null);
+    }
+
+
+    /**
+     * Returns the same criteria without the profile query, e.g. to filter ranked profile search results.
+     *
+     * @return AnalystQuery  The criteria.
+     */
+    public AnalystQuery withoutQuery() {
+        return new AnalystQuery(filter, search, "", statusId, rankId, emailVerified, phoneVerified, contractSigned);
+    }
+
+
+    /**
+     * Returns true if there are no criteria, i.e. the list shows every analyst.
+     *
+     * @return boolean  True if no criteria.
+     */
+    public boolean isEmpty() {
+        return filter.isEmpty() && search.isEmpty() && query.isEmpty() && statusId == null && rankId == null &&
+               emailVerified == null && phoneVerified == null && contractSigned == null;
+    }
+
+
+    /**
+     * Returns the ids of the analysts meeting every criterion.
+     *
+     * @return BitSet  The analyst ids, or null if there are no criteria (every analyst).
+     */
+    public BitSet evaluate() {
+        return evaluate(null);
+    }
+
+
+    /**
+     * Returns the ids of the analysts meeting every criterion except the one for a facet.
+     *
+     * @param excluded  The facet whose criterion is left out (null for none).
+     * @return BitSet   The analyst ids, or null if there are no (other) criteria.
+     */
+    public BitSet evaluate(Dimension excluded) {
+        BitSet ids = null;
+        if (!search.isEmpty()) {
+            ids = and(ids, BitSetIndex.of(AnalystIndex.searchNames(search)));
+        }
+        if (!query.isEmpty()) {
+            ids = and(ids, BitSetIndex.of(AnalystIndex.searchProfiles(query)));
+        }
+        if (!filter.isEmpty() && excluded != Dimension.DESK) {
+            ids = and(ids, AnalystIndex.byDesks(getDeskIds(filter)));
+        }
+        if (statusId != null && excluded != Dimension.STATUS) {
+            ids = and(ids, AnalystIndex.byStatus(statusId));
+        }
+        if (rankId != null && excluded != Dimension.RANK) {
+            ids = and(ids, AnalystIndex.byRank(rankId));
+        }
+        if (emailVerified != null) {
+            ids = and(ids, AnalystIndex.byEmailVerified(emailVerified));
+        }
+        if (phoneVerified != null) {
+            ids = and(ids, AnalystIndex.byPhoneVerified(phoneVerified));
+        }
+        if (contractSigned != null) {
+            ids = and(ids, AnalystIndex.byContractSigned(contractSigned));
+        }
+        return ids;
+    }
+
+
+    /**
+     * Intersects two id sets, either of which may be null (meaning every analyst).
+     *
+     * @param ids      The ids so far (may be null), which are changed.
+     * @param more     The ids to intersect with.
+     * @return BitSet  The intersection.
+     */
+    private static BitSet and(BitSet ids, BitSet more) {
+        if (ids == null) {
+            return more;
+        }
+        ids.and(more);
+        return ids;
+    }
+
+
+    /**
+     * Returns the ids of the desks whose name contains the filter, ignoring case (as the desk filter always has).
+     *
+     * @param filter       The filter.
+     * @return List<Long>  The desk ids.
+     */
+    private static List<Long> getDeskIds(String filter) {
+        String lower = filter.toLowerCase(Locale.ENGLISH);
+        List<Long> deskIds = new ArrayList<Long>();
+        for (Desk desk : Desk.getAll()) {
+            if (desk.name != null && desk.name.toLowerCase(Locale.ENGLISH).contains(lower)) {
+                deskIds.add(desk.deskId);
+            }
+        }
+        return deskIds;
+    }
+
+
+}
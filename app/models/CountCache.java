@@ -0,0 +1,160 @@
+package models;
+
+import com.avaje.ebean.ExpressionList;
+import utils.LruCache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the total row counts shown on the paged lists, so paging through a list doesn't count the rows per click.
+ *
+ * Unfiltered totals are counted once and then kept up to date as rows are inserted and deleted.
+ * Filtered and searched counts are cached per (entity, filter, search); any write to the entity moves it to a new
+ * generation, so its cached counts are no longer found and age out of the cache.
+ * Both kinds are re-counted after a while, to pick up any rows changed outside the application.
+ *
+ * Date:        18/10/26
+ * Time:        04:44
+ *
+ * @version     1.0
+ */
+public class CountCache {
+
+    // Constants
+    public static final String  ANALYST     = "analyst";
+    public static final String  USER        = "user";
+    private static final int    MAX_SIZE    = 1000;
+    private static final long   COUNT_TTL   = 60L * 1000L;      // 1 minute for filtered counts
+    private static final long   TOTAL_TTL   = 10L * 60L * 1000L; // 10 minutes for maintained totals
+
+    private static final LruCache<String,Integer>                counts      =
+                                                            new LruCache<String,Integer>(MAX_SIZE, COUNT_TTL);
+    private static final ConcurrentHashMap<String,AtomicLong>    generations = new ConcurrentHashMap<String,AtomicLong>();
+    private static final ConcurrentHashMap<String,Total>         totals      = new ConcurrentHashMap<String,Total>();
+
+
+    /**
+     * Returns the number of rows in a list, counting them only if the count isn't cached.
+     *
+     * @param entity   The entity, e.g. ANALYST.
+     * @param filter   The list's filter (may be empty).
+     * @param search   The list's search (may be empty).
+     * @param query    The query that selects the list's rows, used if a count is needed.
+     * @return int     The number of rows.
+     */
+    public static int count(String entity, String filter, String search, ExpressionList<?> query) {
+        if (filter.isEmpty() && search.isEmpty()) {
+            return total(entity, query);
+        }
+
+        // The key includes the entity's generation, which changes on every write
+        String key = entity + "|" + getGeneration(entity).get() + "|" + filter + "|" + search;
+        Integer count = counts.get(key);
+        if (count == null) {
+            count = query.findRowCount();
+            counts.put(key, count);
+        }
+        return count;
+    }
+
+
+    /**
+     * Returns an entity's maintained total, counting the rows if not loaded or expired.
+     *
+     * @param entity   The entity.
+     * @param query    The query that selects all rows.
+     * @return int     The number of rows.
+     */
+    private static int total(String entity, ExpressionList<?> query) {
+        Total total = totals.get(entity);
+        if (total == null || total.expires < System.currentTimeMillis()) {
+            total = new Total(query.findRowCount(), System.currentTimeMillis() + TOTAL_TTL);
+            totals.put(entity, total);
+        }
+        return total.count.get();
+    }
+
+
+    /**
+     * Records that a row was inserted.
+     *
+     * @param entity  The entity.
+     */
+    public static void inserted(String entity) {
+        Total total = totals.get(entity);
+        if (total != null) {
+            total.count.incrementAndGet();
+        }
+        changed(entity);
+    }
+
+
+    /**
+     * Records that a row was deleted.
+     *
+     * @param entity  The entity.
+     */
+    public static void deleted(String entity) {
+        Total total = totals.get(entity);
+        if (total != null) {
+            total.count.decrementAndGet();
+        }
+        changed(entity);
+    }
+
+
+    /**
+     * Records that a row was changed, which may change the filtered and searched counts.
+     *
+     * @param entity  The entity.
+     */
+    public static void changed(String entity) {
+        getGeneration(entity).incrementAndGet();
+    }
+
+
+    /**
+     * Removes all cached counts and totals.
+     */
+    public static void clear() {
+        counts.clear();
+        totals.clear();
+    }
+
+
+    /**
+     * Gets an entity's generation, creating it if needed.
+     *
+     * @param entity       The entity.
+     * @return AtomicLong  The generation.
+     */
+    private static AtomicLong getGeneration(String entity) {
+        AtomicLong generation = generations.get(entity);
+        if (generation == null) {
+            AtomicLong created = new AtomicLong();
+            generation = generations.putIfAbsent(entity, created);
+            if (generation == null) {
+                generation = created;
+            }
+        }
+        return generation;
+    }
+
+
+    /**
+     * A maintained total and when it should be counted again.
+     */
+    private static class Total {
+        final AtomicInteger count;
+        final long          expires;
+
+        Total(int count, long expires) {
+            this.count = new AtomicInteger(count);
+            this.expires = expires;
+        }
+    }
+
+
+}
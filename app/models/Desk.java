@@ -88,6 +88,19 @@ public class Desk extends Model {
     }
 
 
+    /**
+     * Updates the desk and re-sorts the analysts with it as their primary desk, as the name may have changed.
+     */
+    @Override
+    public void update() {
+        super.update();
+        AnalystIndex.refreshDesk(this);
+        AnalystListCache.changed();
+        AnalystJsonCache.changedAll(); // Analysts' JSON includes the name
+        EntityVersions.referenceChanged();
+    }
+
+
     /**
      * Converts the desk to JSON.
      *
@@ -0,0 +1,79 @@
+package models;
+
+import com.avaje.ebean.Ebean;
+import com.avaje.ebean.SqlRow;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions of the entities behind the JSON API, from which responses get their ETags (see
+ * AbstractController.isNotModified), so an unchanged response can be answered with 304 Not Modified after reading
+ * just a version.
+ *
+ * Analysts, notes and users have a version column, which starts at 1 and is incremented by bump() whenever the row
+ * is written; Ebean neither inserts nor updates it, so it can't be overwritten by a bean bound from a form.
+ * The columns are added by conf/sql/1_entity_versions.sql.
+ *
+ * Reference data (ranks, desks, statuses and groups) and users, which appear inside other entities' JSON, share an
+ * in-memory version that starts afresh with a new epoch each time the application starts.
+ *
+ * Date:        18/10/26
+ * Time:        05:07
+ *
+ * @version     1.0
+ */
+public class EntityVersions {
+
+    private static final String     EPOCH       = Long.toString(System.currentTimeMillis(), 36);
+    private static final AtomicLong reference   = new AtomicLong();
+
+
+    /**
+     * Increments a row's version.
+     *
+     * @param table     The table.
+     * @param idColumn  The table's id column.
+     * @param id        The row's id.
+     */
+    static void bump(String table, String idColumn, Long id) {
+        Ebean.createSqlUpdate("update " + table + " set version = version + 1 where " + idColumn + " = :id")
+             .setParameter("id", id)
+             .execute();
+    }
+
+
+    /**
+     * Returns a row's version, without loading the entity.
+     *
+     * @param table     The table.
+     * @param idColumn  The table's id column.
+     * @param id        The row's id.
+     * @return Long     The version, or null if there's no such row.
+     */
+    static Long get(String table, String idColumn, Long id) {
+        SqlRow row = Ebean.createSqlQuery("select version from " + table + " where " + idColumn + " = :id")
+                          .setParameter("id", id)
+                          .findUnique();
+        return (row == null) ? (null) : (row.getLong("version"));
+    }
+
+
+    /**
+     * Records that reference data or a user changed.
+     */
+    public static void referenceChanged() {
+        reference.incrementAndGet();
+    }
+
+
+    /**
+     * Returns the version of the reference data and users.
+     *
+     * @return String  The version.
+     */
+    public static String getReferenceVersion() {
+        return EPOCH + "." + reference.get();
+    }
+
+
+}
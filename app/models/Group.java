@@ -8,13 +8,15 @@ import play.db.ebean.Model;
 import play.db.ebean.Model.Finder; // Import Finder as sometimes Play! shows compilation error "not found: type Finder"
 
 import javax.persistence.*;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Model class that maps to DB table group.
- * Contains methods to get groups.
+ * Contains methods to get groups. The groups are read once and kept in memory, as they rarely change.
  *
  * Date: 08/11/13
  * Time: 12:52
@@ -44,13 +46,51 @@ public class Group extends Model {
     public static Finder<Long, Group> find = new Finder<Long, Group>(Long.class, Group.class);
 
 
+    /**
+     * All groups, ordered by name, with the version of the groups they were read at (null until read).
+     * Every change bumps the version, so a list read before a change, even if it's stored after it, isn't used.
+     */
+    private static volatile Versioned     all;
+    private static final AtomicLong       version = new AtomicLong();
+
+
     /**
      * Returns a list of all groups.
      *
-     * @return List<Group>  List of all groups.
+     * @return List<Group>  List of all groups (not to be changed).
      */
     public static List<Group> getAll() {
-        return Group.find.where().orderBy("name").findList();
+        Versioned groups = all;
+        long current = version.get();
+        if (groups == null || groups.version != current) {
+            List<Group> list = Group.find.where().orderBy("name").findList();
+            groups = new Versioned(current, Collections.unmodifiableList(list));
+            all = groups;
+        }
+        return groups.list;
+    }
+
+
+    /**
+     * Returns the group a list filter refers to: its id or, if the filter isn't a number (as in older links),
+     * its exact name.
+     *
+     * @param filter   The group id or name.
+     * @return Group   The group, or null if there isn't one.
+     */
+    public static Group get(String filter) {
+        Long id = null;
+        try {
+            id = Long.valueOf(filter);
+        } catch (NumberFormatException e) {
+            // Not an id, so look the filter up by name
+        }
+        for (Group group : getAll()) {
+            if ((id != null) ? (group.id.equals(id)) : (group.name.equals(filter))) {
+                return group;
+            }
+        }
+        return null;
     }
 
 
@@ -87,6 +127,43 @@ public class Group extends Model {
     }
 
 
+    /**
+     * Saves a new group, clears the groups held in memory and bumps the reference data version.
+     */
+    @Override
+    public void save() {
+        super.save();
+        version.incrementAndGet();
+        EntityVersions.referenceChanged();
+    }
+
+
+    /**
+     * Updates the group, clears the groups held in memory and analysts' cached JSON (notes include users' groups)
+     * and bumps the reference data version.
+     */
+    @Override
+    public void update() {
+        super.update();
+        version.incrementAndGet();
+        EntityVersions.referenceChanged();
+        AnalystJsonCache.changedAll();
+    }
+
+
+    /**
+     * Deletes the group, clears the groups held in memory and analysts' cached JSON and bumps the reference data
+     * version.
+     */
+    @Override
+    public void delete() {
+        super.delete();
+        version.incrementAndGet();
+        EntityVersions.referenceChanged();
+        AnalystJsonCache.changedAll();
+    }
+
+
     /**
      * Converts the group to JSON.
      * @return ObjectNode  The group as a JSON object node.
@@ -99,4 +176,18 @@ public class Group extends Model {
     }
 
 
+    /**
+     * A list of groups and the version of the groups it was read at.
+     */
+    private static class Versioned {
+        final long          version;
+        final List<Group>   list;
+
+        Versioned(long version, List<Group> list) {
+            this.version = version;
+            this.list = list;
+        }
+    }
+
+
 }
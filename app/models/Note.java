@@ -49,6 +49,9 @@ public class Note extends Model {
     @JodaDateTime
     public DateTime                 updatedDt;
 
+    @Column(insertable=false, updatable=false)
+    public Long                     version;  // Incremented by each update
+
 
     /**
      * Generic query helper for entity Note.
@@ -71,6 +74,63 @@ public class Note extends Model {
     }
 
 
+    /**
+     * Saves a new note, so cached analyst list pages (whose analysts may include their notes) and JSON are stale.
+     */
+    @Override
+    public void save() {
+        super.save();
+        changed();
+    }
+
+
+    /**
+     * Updates the note and its version, so cached analyst list pages and JSON are stale.
+     */
+    @Override
+    public void update() {
+        super.update();
+        EntityVersions.bump("note", "note_id", noteId);
+        changed();
+    }
+
+
+    /**
+     * Deletes the note, so cached analyst list pages and JSON are stale.
+     */
+    @Override
+    public void delete() {
+        super.delete();
+        changed();
+    }
+
+
+    /**
+     * Returns a note's version without loading the note.
+     *
+     * @param noteId  The note id.
+     * @return Long   The version, or null if the note doesn't exist.
+     */
+    public static Long getVersion(Long noteId) {
+        return EntityVersions.get("note", "note_id", noteId);
+    }
+
+
+    /**
+     * Records that the note was written, so cached analyst list pages and the analyst's cached JSON are stale
+     * and the analyst has a new version.
+     */
+    private void changed() {
+        AnalystListCache.changed();
+        if (analyst != null) {
+            AnalystJsonCache.changed(analyst.analystId);
+            Analyst.touch(analyst.analystId);
+        } else {
+            AnalystJsonCache.changedAll();
+        }
+    }
+
+
     /**
      * Converts the note to JSON.
      *
@@ -82,13 +142,13 @@ public class Note extends Model {
         result.put("title", title);
         result.put("content", content);
         if (user != null) { // Non-required fields may be null
-            result.put("user", user.toJson());
+            result.put("user", user.toJson(false)); // Without the last login, which doesn't change the version
         }
         if (createdDt != null) {
             result.put("createdDt", Utils.formatTimestamp(createdDt));
         }
         if (updatedBy != null) {
-            result.put("updatedBy", updatedBy.toJson());
+            result.put("updatedBy", updatedBy.toJson(false));
         }
         if (updatedDt != null) {
             result.put("updatedDt", Utils.formatTimestamp(updatedDt));
@@ -0,0 +1,90 @@
+package models;
+
+import com.avaje.ebean.event.BeanQueryAdapter;
+import com.avaje.ebean.event.BeanQueryRequest;
+
+/**
+ * Counts the Ebean queries run for the current request, including lazy loads and the secondary queries of
+ * fetch plans, so a request's query count shows whether its relationships are loaded in batches or one by one.
+ * Global starts the count when a request's action is called and reports it when the action returns.
+ *
+ * Ebean registers the adapter for every entity as it's in the models package.
+ * Counts are kept per thread, so queries run after the action returns (e.g. by a chunked response) aren't counted.
+ *
+ * Date:        18/10/26
+ * Time:        05:03
+ *
+ * @version     1.0
+ */
+public class QueryCounter implements BeanQueryAdapter {
+
+    public static final String HEADER = "X-Query-Count"; // Response header with the count (not in production)
+
+    private static final ThreadLocal<int[]> count = new ThreadLocal<int[]>();
+
+
+    /**
+     * Returns true, to count the queries on every entity.
+     *
+     * @param cls       The entity class.
+     * @return boolean  True.
+     */
+    @Override
+    public boolean isRegisterFor(Class<?> cls) {
+        return true;
+    }
+
+
+    /**
+     * Returns the order in which the adapter is called, relative to other adapters.
+     *
+     * @return int  The order.
+     */
+    @Override
+    public int getExecutionOrder() {
+        return 0;
+    }
+
+
+    /**
+     * Counts a query if the thread is counting.
+     *
+     * @param request  The query request.
+     */
+    @Override
+    public void preQuery(BeanQueryRequest<?> request) {
+        int[] queries = count.get();
+        if (queries != null) {
+            queries[0]++;
+        }
+    }
+
+
+    /**
+     * Starts counting the thread's queries from zero.
+     */
+    public static void start() {
+        count.set(new int[1]);
+    }
+
+
+    /**
+     * Returns the number of queries since the thread started counting.
+     *
+     * @return int  The number of queries, or -1 if the thread isn't counting.
+     */
+    public static int get() {
+        int[] queries = count.get();
+        return (queries == null) ? (-1) : (queries[0]);
+    }
+
+
+    /**
+     * Stops counting the thread's queries.
+     */
+    public static void stop() {
+        count.remove();
+    }
+
+
+}
@@ -79,6 +79,19 @@ public class Rank extends Model {
     }
 
 
+    /**
+     * Updates the rank and re-sorts the analysts with it as their rank, as the name may have changed.
+     */
+    @Override
+    public void update() {
+        super.update();
+        AnalystIndex.refreshRank(this);
+        AnalystListCache.changed();
+        AnalystJsonCache.changedAll(); // Analysts' JSON includes the name
+        EntityVersions.referenceChanged();
+    }
+
+
     /**
      * Converts the rank to JSON.
      *
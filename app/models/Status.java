@@ -150,6 +150,19 @@ public class Status extends Model {
     }
 
 
+    /**
+     * Updates the status and re-sorts the analysts with it as their status, as the name may have changed.
+     */
+    @Override
+    public void update() {
+        super.update();
+        AnalystIndex.refreshStatus(this);
+        AnalystListCache.changed();
+        AnalystJsonCache.changedAll(); // Analysts' JSON includes the name
+        EntityVersions.referenceChanged();
+    }
+
+
     /**
      * Converts the status to JSON.
      *
@@ -1,6 +1,7 @@
 package models;
 
-import com.avaje.ebean.Page;
+import com.avaje.ebean.FetchConfig;
+import com.avaje.ebean.Query;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import play.data.format.Formats;
@@ -8,14 +9,23 @@ import play.data.validation.Constraints;
 import play.db.ebean.Model;
 import play.db.ebean.Model.Finder; // Import Finder as sometimes Play! shows compilation error "not found: type Finder"
 import play.libs.Json;
+import utils.KeysetCursor;
+import utils.ListPage;
 import utils.Utils;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
+import javax.persistence.Transient;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Model class that maps to DB table user.
@@ -28,7 +38,12 @@ import java.util.List;
  * @version     1.2
  */
 @Entity
-public class User extends Model {
+public class User extends Model implements KeysetCursor.Row {
+
+    // Role bits, built from the names of the groups the user is assigned to
+    public static final int ROLE_ADMIN      = 1;
+    public static final int ROLE_MANAGER    = 2;
+    public static final int ROLE_STAFF      = 4;
 
     // Instance variables
     @Constraints.Required                     // A required constraint will ensure form fields are entered
@@ -54,6 +69,12 @@ public class User extends Model {
     @ManyToMany(mappedBy="users")
     public List<Group>              groups;
 
+    @Column(insertable=false, updatable=false)
+    public Long                     version;  // Incremented by each update (including its groups)
+
+    @Transient
+    private int                     roles = -1; // Loaded on first use by getRoles()
+
 
     /**
      * Generic query helper for entity User.
@@ -62,41 +83,225 @@ public class User extends Model {
 
 
     /**
-     * Returns a page of users.
+     * Columns the user list can be sorted on with keyset pagination (sortBy values are checked against these).
+     */
+    public static final List<String> SORT_COLUMNS = Arrays.asList("fullname", "username", "email", "id");
+
+    private static final int GROUPS_BATCH_SIZE = 100; // User ids per query when loading the users' groups
+
+
+    /**
+     * Returns the sort column if it's one the list can be sorted on with keyset pagination, otherwise fullname.
+     *
+     * @param sortBy    The requested sort column.
+     * @return String   A valid sort column.
+     */
+    public static String checkSortBy(String sortBy) {
+        return (SORT_COLUMNS.contains(sortBy)) ? (sortBy) : ("fullname");
+    }
+
+
+    /**
+     * Returns the sort order if valid, otherwise asc.
+     *
+     * @param order     The requested sort order.
+     * @return String   Either asc or desc.
+     */
+    public static String checkOrder(String order) {
+        return ("desc".equalsIgnoreCase(order)) ? ("desc") : ("asc");
+    }
+
+
+    /**
+     * Returns a page of users. The page is a slice of the in-memory ordering for the sort column (see UserIndex),
+     * so the DB only reads the page's users by id.
      *
      * @param page          Page to display.
      * @param pageSize      Number of users per page.
+     * @param sortBy        User property used for sorting (anything else sorts by name).
+     * @param order         Sort order (either or asc or desc).
+     * @param filter        Filter applied on group (the group id, or for older links its name).
+     * @param search        Search applied on fullname.
+     * @return ListPage<User>  The page of users.
+     */
+    public static ListPage<User> page(int page, int pageSize, String sortBy, String order, String filter, String search) {
+        BitSet ids = getIds(filter, search);
+        int rowCount = (ids == null) ? (CountCache.count(CountCache.USER, "", "", find.where())) : (ids.cardinality());
+        List<Long> pageIds = UserIndex.sortedSlice(checkSortBy(sortBy), checkOrder(order).equals("asc"), ids,
+                                                   page * pageSize, pageSize);
+        return ListPage.offset(findInOrder(pageIds), page, pageSize, rowCount);
+    }
+
+
+    /**
+     * Returns a page of users using keyset (seek) pagination, in the (sortBy, id) ordering. The cursor's position is
+     * found in the in-memory ordering for the sort column (see UserIndex), so the DB only reads the page's users by id.
+     *
+     * @param cursor        The cursor (see KeysetCursor).
+     * @param pageSize      Number of users per page.
      * @param sortBy        User property used for sorting.
      * @param order         Sort order (either or asc or desc).
-     * @param filter        Filter applied on group name.
+     * @param filter        Filter applied on group (the group id, or for older links its name).
      * @param search        Search applied on fullname.
-     * @return Page<User>   The page of users.
-     */
-    public static Page<User> page(int page, int pageSize, String sortBy, String order, String filter, String search) {
-
-        // Search on fullname, otherwise filter on group name if it's set
-        Page p = null;
-        if (!search.isEmpty()) { // Search
-            p = find.where()
-                    .ilike("fullname", "%" + search + "%")
-                    .orderBy(sortBy + " " + order)
-                    .findPagingList(pageSize)
-                    .getPage(page);
-        } else {
-            if (!filter.isEmpty()) { // Filter
-                p = find.where()
-                        .ilike("groups.name", "%" + filter + "%")
-                        .orderBy(sortBy + " " + order)
-                        .findPagingList(pageSize)
-                        .getPage(page);
-            } else { // Get all records
-                p = find.where()
-                        .orderBy(sortBy + " " + order)
-                        .findPagingList(pageSize)
-                        .getPage(page);
+     * @param count         True to count the users in the list, otherwise the total is -1.
+     * @return ListPage<User>  A page of users with cursors to the pages either side.
+     */
+    public static ListPage<User> seek(String cursor, int pageSize, String sortBy, String order, String filter,
+                                      String search, boolean count) {
+        BitSet ids = getIds(filter, search);
+        int rowCount = -1;
+        if (count) {
+            rowCount = (ids == null) ? (CountCache.count(CountCache.USER, "", "", find.where())) : (ids.cardinality());
+        }
+        sortBy = checkSortBy(sortBy);
+        KeysetCursor position = KeysetCursor.parse(cursor);
+        // Read one extra user to find out if there's another page
+        List<Long> pageIds = UserIndex.seek(sortBy, checkOrder(order).equals("asc"), ids, position, pageSize + 1);
+        return ListPage.keyset(findInOrder(pageIds), position, pageSize, sortBy, rowCount);
+    }
+
+
+    /**
+     * Returns the users with the given ids, with their groups, in the order of the ids (ids not found are left out).
+     *
+     * @param ids          The user ids.
+     * @return List<User>  The users.
+     */
+    private static List<User> findInOrder(List<Long> ids) {
+        List<User> users = new ArrayList<User>(ids.size());
+        if (ids.isEmpty()) {
+            return users;
+        }
+        Map<Long,User> byId = new HashMap<Long,User>();
+        for (User user : withGroups().where().idIn(ids).findList()) {
+            byId.put(user.id, user);
+        }
+        for (Long id : ids) {
+            User user = byId.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+
+    /**
+     * Returns a query for users that loads the groups of all the users found in one query, rather than per user.
+     *
+     * @return Query<User>  The query.
+     */
+    private static Query<User> withGroups() {
+        return find.fetch("groups", new FetchConfig().query(GROUPS_BATCH_SIZE));
+    }
+
+
+    /**
+     * Returns the ids of the users matching the search on fullname and the filter on group, both resolved by the
+     * in-memory indexes (see UserIndex).
+     *
+     * @param filter        Filter applied on group (the group id, or for older links its name).
+     * @param search        Search applied on fullname.
+     * @return BitSet  The user ids, or null if neither is set (every user).
+     */
+    private static BitSet getIds(String filter, String search) {
+        BitSet ids = null;
+        if (!search.isEmpty()) {
+            ids = new BitSet();
+            for (Long id : UserIndex.searchFullnames(search)) {
+                ids.set(id.intValue());
             }
         }
-        return p;
+        if (!filter.isEmpty()) {
+            Group group = Group.get(filter);
+            BitSet members = (group == null) ? (new BitSet()) : (UserIndex.byGroup(group.id));
+            if (ids == null) {
+                ids = members;
+            } else {
+                ids.and(members);
+            }
+        }
+        return ids;
+    }
+
+
+    /**
+     * Returns the user's value of a sort column, as used in a keyset cursor.
+     *
+     * @param sortBy    The sort column (one of SORT_COLUMNS).
+     * @return String   The value (may be null).
+     */
+    public String getSortValue(String sortBy) {
+        switch (sortBy) {
+            case "username":
+                return username;
+            case "email":
+                return email;
+            case "id":
+                return String.valueOf(id);
+            default:
+                return fullname;
+        }
+    }
+
+
+    /**
+     * Returns the user id, which breaks ties in a keyset cursor.
+     *
+     * @return Long  The user id.
+     */
+    public Long getRowId() {
+        return id;
+    }
+
+
+    /**
+     * Saves a new user and updates the list counts and indexes.
+     */
+    @Override
+    public void save() {
+        super.save();
+        CountCache.inserted(CountCache.USER);
+        UserIndex.put(this);
+    }
+
+
+    /**
+     * Updates the user, invalidates the filtered list counts and re-indexes it (its names or groups may have changed).
+     * Analysts' cached JSON and versions are stale too, as their notes include their users.
+     */
+    @Override
+    public void update() {
+        super.update();
+        CountCache.changed(CountCache.USER);
+        UserIndex.put(this);
+        AnalystJsonCache.changedAll();
+        EntityVersions.bump("user", "id", id);
+        EntityVersions.referenceChanged();
+    }
+
+
+    /**
+     * Deletes the user and updates the list counts, name index and analysts' cached JSON.
+     */
+    @Override
+    public void delete() {
+        super.delete();
+        CountCache.deleted(CountCache.USER);
+        UserIndex.remove(id);
+        AnalystJsonCache.changedAll();
+        EntityVersions.referenceChanged();
+    }
+
+
+    /**
+     * Returns a user's version without loading the user.
+     *
+     * @param id     The user id.
+     * @return Long  The version, or null if the user doesn't exist.
+     */
+    public static Long getVersion(Long id) {
+        return EntityVersions.get("user", "id", id);
     }
 
 
@@ -117,6 +322,7 @@ public class User extends Model {
         } else {
             update();
         }
+        UserCache.remove(id, username);
     }
 
 
@@ -134,13 +340,61 @@ public class User extends Model {
     }
 
 
+    /**
+     * Returns the user's roles as a bitmask of ROLE_ADMIN, ROLE_MANAGER and ROLE_STAFF.
+     * The groups are fetched once and the mask is kept for the life of this object,
+     * so role checks made while rendering a page don't query the DB.
+     *
+     * @return int  The role bitmask.
+     */
+    public int getRoles() {
+        if (roles < 0) {
+            roles = getRoleMask(groups);
+        }
+        return roles;
+    }
+
+
+    /**
+     * Sets the user's roles, for a copy of a user whose groups aren't loaded (see UserCache).
+     *
+     * @param roles  The role bitmask.
+     */
+    void setRoles(int roles) {
+        this.roles = roles;
+    }
+
+
+    /**
+     * Builds a role bitmask from a list of groups (groups could be null).
+     *
+     * @param groups  The groups.
+     * @return int    The role bitmask.
+     */
+    public static int getRoleMask(List<Group> groups) {
+        int mask = 0;
+        if (groups != null) {
+            for (Group group : groups) {
+                if ("Admin".equals(group.name)) {
+                    mask |= ROLE_ADMIN;
+                } else if ("Manager".equals(group.name)) {
+                    mask |= ROLE_MANAGER;
+                } else if ("Staff".equals(group.name)) {
+                    mask |= ROLE_STAFF;
+                }
+            }
+        }
+        return mask;
+    }
+
+
     /**
      * Checks if this user is an admin user, a manager or a staff member.
      *
      * @return boolean  True if the user is an admin user, a manager or a staff member, else returns false.
      */
     public boolean isAdminOrManagerOrStaff() {
-        return isAdminOrManager() || isStaff();
+        return (getRoles() & (ROLE_ADMIN | ROLE_MANAGER | ROLE_STAFF)) != 0;
     }
 
 
@@ -150,7 +404,7 @@ public class User extends Model {
      * @return boolean  True if the user is an admin user, a manager or a staff member, else returns false.
      */
     public boolean isAdminOrManager() {
-        return isAdmin() || isManager();
+        return (getRoles() & (ROLE_ADMIN | ROLE_MANAGER)) != 0;
     }
 
 
@@ -160,10 +414,7 @@ public class User extends Model {
      * @return boolean  True if the user is an admin user, else returns false.
      */
     public boolean isAdmin() {
-        return find.where()
-                .eq("username", username)
-                .eq("groups.name", "Admin")
-                .findRowCount() == 1;
+        return (getRoles() & ROLE_ADMIN) != 0;
     }
 
 
@@ -173,10 +424,7 @@ public class User extends Model {
      * @return boolean  True if the user is an admin user, else returns false.
      */
     public boolean isManager() {
-        return find.where()
-                .eq("username", username)
-                .eq("groups.name", "Manager")
-                .findRowCount() == 1;
+        return (getRoles() & ROLE_MANAGER) != 0;
     }
 
 
@@ -186,10 +434,7 @@ public class User extends Model {
      * @return boolean  True if the user is a staff member, else returns false.
      */
     public boolean isStaff() {
-        return find.where()
-                .eq("username", username)
-                .eq("groups.name", "Staff")
-                .findRowCount() == 1;
+        return (getRoles() & ROLE_STAFF) != 0;
     }
 
 
@@ -220,6 +465,9 @@ public class User extends Model {
                 groups.add(group);
                 saveManyToManyAssociations("groups"); // Update the database
                 update();
+                roles = -1; // Rebuild the role bitmask on next use
+                UserCache.remove(id, username);
+                UserIndex.addToGroup(id, group.id);
             }
         }
         catch (Exception e) {
@@ -242,6 +490,9 @@ public class User extends Model {
                 groups.remove(group);
                 saveManyToManyAssociations("groups"); // Update the database
                 update();
+                roles = -1; // Rebuild the role bitmask on next use
+                UserCache.remove(id, username);
+                UserIndex.removeFromGroup(id, group.id);
             } else {
                 throw new Exception("Group: " + group.name + ", id: " + group.id + " not assigned to the user.");
             }
@@ -264,6 +515,9 @@ public class User extends Model {
             groups.clear();
             saveManyToManyAssociations("groups"); // Update the database
             update();
+            roles = -1; // Rebuild the role bitmask on next use
+            UserCache.remove(id, username);
+            UserIndex.removeFromAllGroups(id);
         }
         catch (Exception e) {
             Utils.eHandler("Analyst.delAllGroups()", e);
@@ -292,7 +546,7 @@ public class User extends Model {
      * @return ObjectNode  The users as a JSON object node.
      */
     public static ObjectNode getAllAsJson() {
-        List<User> users = User.find.all();
+        List<User> users = withGroups().findList();
         ObjectNode result = Json.newObject();
         ArrayNode userNodes = result.arrayNode();
         for (User user : users) {
@@ -304,6 +558,33 @@ public class User extends Model {
     }
 
 
+    /**
+     * Gets a page of users as JSON, with the cursors for the pages either side (keyset pages only).
+     *
+     * @param  page   The page of users.
+     * @param  count  True to include the total number of users in the list.
+     * @return ObjectNode  The users as a JSON object node.
+     */
+    public static ObjectNode getPageAsJson(ListPage<User> page, boolean count) {
+        ObjectNode result = Json.newObject();
+        ArrayNode userNodes = result.arrayNode();
+        for (User user : page.getList()) {
+            userNodes.add(user.toJson());
+        }
+        result.put("users", userNodes);
+        if (count && page.getTotalRowCount() >= 0) {
+            result.put("totalRowCount", page.getTotalRowCount());
+        }
+        if (page.getPrevCursor() != null) {
+            result.put("prevCursor", page.getPrevCursor());
+        }
+        if (page.getNextCursor() != null) {
+            result.put("nextCursor", page.getNextCursor());
+        }
+        return result;
+    }
+
+
     /**
      * Converts the user and its groups to JSON. User-group is a many-many relationship.
      * Using Play's static toJson method results in a StackOverflow error (infinite recursion).
@@ -311,6 +592,18 @@ public class User extends Model {
      * @return ObjectNode  The user as a JSON object node.
      */
     public ObjectNode toJson() {
+        return toJson(true);
+    }
+
+
+    /**
+     * Converts the user and its groups to JSON, optionally without the last login time. Users embedded in other JSON
+     * (e.g. a note's author) leave it out, as LastLoginPlugin writes it without changing the versions of that JSON.
+     *
+     * @param  lastLogin   True to include the last login time.
+     * @return ObjectNode  The user as a JSON object node.
+     */
+    public ObjectNode toJson(boolean lastLogin) {
         ObjectNode userNode = Json.newObject();
         if (id == null) {
             return userNode;
@@ -319,7 +612,7 @@ public class User extends Model {
         userNode.put("username", username);
         userNode.put("email", email);
         userNode.put("fullname", fullname);
-        if (lastlogin != null) { // Non-required fields may be null
+        if (lastLogin && lastlogin != null) { // Non-required fields may be null
             userNode.put("lastlogin", Utils.formatTimestamp(lastlogin));
         }
         userNode.put("groups", getGroupsAsJsonArray(userNode));
@@ -347,6 +640,9 @@ public class User extends Model {
      */
     private ArrayNode getGroupsAsJsonArray(ObjectNode userNode) {
         ArrayNode groupNodes = userNode.arrayNode();
+        if (groups == null) { // A copy from UserCache
+            return groupNodes;
+        }
         for (Group group : groups) {
             ObjectNode groupNode = group.toJson();
             groupNodes.add(groupNode);
@@ -0,0 +1,175 @@
+package models;
+
+import utils.LruCache;
+
+import java.sql.Timestamp;
+
+/**
+ * Node-local cache of users and their roles, keyed by username and by id.
+ * Authenticated requests look up the logged-in user here, so the common case needs no DB round trip.
+ * Methods that change a user or the user's groups remove the user from the cache.
+ *
+ * The cache holds immutable snapshots of the users, never the beans themselves, and each lookup returns a new copy,
+ * so concurrent requests don't share a user they may change (e.g. by adding a group or assigning it to a note).
+ * The copies have their roles set but no groups.
+ *
+ * Date:        18/10/26
+ * Time:        04:35
+ *
+ * @version     1.0
+ */
+public class UserCache {
+
+    // Constants
+    public static final int  MAX_SIZE   = 1000;
+    public static final long TTL_MILLIS = 5 * 60 * 1000; // 5 minutes
+
+    private static final LruCache<String,Snapshot> byUsername = new LruCache<String,Snapshot>(MAX_SIZE, TTL_MILLIS);
+    private static final LruCache<Long,Snapshot>   byId       = new LruCache<Long,Snapshot>(MAX_SIZE, TTL_MILLIS);
+
+
+    /**
+     * Returns the user with the username, from the cache if possible.
+     *
+     * @param username  The username.
+     * @return User     A copy of the user, or null if the user doesn't exist.
+     */
+    public static User findByUsername(String username) {
+        if (username == null) {
+            return null;
+        }
+        Snapshot snapshot = byUsername.get(username);
+        if (snapshot == null) {
+            snapshot = add(User.find.where().eq("username", username).findUnique());
+        }
+        return (snapshot == null) ? (null) : (snapshot.toUser());
+    }
+
+
+    /**
+     * Returns the user with the id, from the cache if possible.
+     *
+     * @param id     The user id.
+     * @return User  A copy of the user, or null if the user doesn't exist.
+     */
+    public static User findById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        Snapshot snapshot = byId.get(id);
+        if (snapshot == null) {
+            snapshot = add(User.find.byId(id));
+        }
+        return (snapshot == null) ? (null) : (snapshot.toUser());
+    }
+
+
+    /**
+     * Loads the user's roles and adds a snapshot of the user to the cache.
+     *
+     * @param user       The user (may be null).
+     * @return Snapshot  The snapshot, or null if there's no user.
+     */
+    private static Snapshot add(User user) {
+        if (user == null) {
+            return null;
+        }
+        Snapshot snapshot = new Snapshot(user);
+        byUsername.put(snapshot.username, snapshot);
+        byId.put(snapshot.id, snapshot);
+        return snapshot;
+    }
+
+
+    /**
+     * Removes the user from the cache. Either value may be null.
+     * Both keys are removed, in case the username has changed since the user was cached.
+     *
+     * @param id        The user id.
+     * @param username  The username.
+     */
+    public static void remove(Long id, String username) {
+        if (id != null) {
+            Snapshot cached = byId.remove(id);
+            if (cached != null) {
+                byUsername.remove(cached.username);
+            }
+        }
+        if (username != null) {
+            Snapshot cached = byUsername.remove(username);
+            if (cached != null) {
+                byId.remove(cached.id);
+            }
+        }
+    }
+
+
+    /**
+     * Sets the last login time of a cached user, e.g. when it has been written to the DB.
+     * A user who isn't cached is left to be loaded when next needed.
+     *
+     * @param id         The user id.
+     * @param lastlogin  The time in milliseconds.
+     */
+    public static void setLastLogin(Long id, long lastlogin) {
+        Snapshot snapshot = byId.get(id);
+        if (snapshot != null) {
+            Snapshot updated = new Snapshot(snapshot, lastlogin);
+            byId.replace(id, updated);
+            byUsername.replace(updated.username, updated);
+        }
+    }
+
+
+    /**
+     * Removes all users from the cache.
+     */
+    public static void clear() {
+        byUsername.clear();
+        byId.clear();
+    }
+
+
+    /**
+     * The cached fields of a user, which never change once cached.
+     */
+    private static class Snapshot {
+        final Long      id;
+        final String    username;
+        final String    email;
+        final String    fullname;
+        final Long      lastlogin;  // Time in milliseconds, as a Timestamp can be changed
+        final int       roles;
+
+        Snapshot(User user) {
+            this.id = user.id;
+            this.username = user.username;
+            this.email = user.email;
+            this.fullname = user.fullname;
+            this.lastlogin = (user.lastlogin == null) ? (null) : (user.lastlogin.getTime());
+            this.roles = user.getRoles();
+        }
+
+        Snapshot(Snapshot snapshot, long lastlogin) {
+            this.id = snapshot.id;
+            this.username = snapshot.username;
+            this.email = snapshot.email;
+            this.fullname = snapshot.fullname;
+            this.lastlogin = lastlogin;
+            this.roles = snapshot.roles;
+        }
+
+        User toUser() {
+            User user = new User();
+            user.id = id;
+            user.username = username;
+            user.email = email;
+            user.fullname = fullname;
+            user.lastlogin = (lastlogin == null) ? (null) : (new Timestamp(lastlogin));
+            user.setRoles(roles);
+            return user;
+        }
+    }
+
+
+}
@@ -0,0 +1,180 @@
+package models;
+
+import play.Logger;
+import utils.KeysetCursor;
+import utils.MembershipIndex;
+import utils.SortedIdIndex;
+import utils.TrigramIndex;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory indexes over the user table, built when the application starts (see SearchIndexPlugin)
+ * and kept up to date as users are saved and deleted.
+ *
+ * Full names: a trigram index that resolves the user list's substring search without a leading-wildcard LIKE.
+ * Groups: the users in each group, kept up to date as groups are added and removed (see User.addGroup), which
+ * resolves the user list's group filter by group id without a join through usergroup.
+ * Orderings: the user ids sorted by each of the list's sort columns, so a sorted page (offset or keyset) is a slice
+ * of ids rather than an ORDER BY over the matching ids.
+ *
+ * Date:        18/10/26
+ * Time:        04:47
+ *
+ * @version     1.0
+ */
+public class UserIndex {
+
+    private static final TrigramIndex               fullnames   = new TrigramIndex();
+    private static final MembershipIndex            memberships = new MembershipIndex();
+    private static final Map<String,SortedIdIndex>  orderings   = new HashMap<String,SortedIdIndex>();
+
+    static {
+        for (String sortBy : User.SORT_COLUMNS) {
+            orderings.put(sortBy, new SortedIdIndex());
+        }
+    }
+
+
+    /**
+     * Builds the index from the DB.
+     */
+    public static void rebuild() {
+        long start = System.currentTimeMillis();
+        List<User> users = User.find.select("id, fullname, username, email").fetch("groups", "id").findList();
+        fullnames.clear();
+        memberships.clear();
+        for (SortedIdIndex ordering : orderings.values()) {
+            ordering.clear();
+        }
+        for (User user : users) {
+            put(user);
+            for (Group group : user.groups) {
+                memberships.add(user.id, group.id);
+            }
+        }
+        Logger.info("Indexed " + users.size() + " users in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+
+    /**
+     * Adds or replaces a user in the index.
+     *
+     * @param user  The user.
+     */
+    public static void put(User user) {
+        fullnames.put(user.id, user.fullname);
+        for (Map.Entry<String,SortedIdIndex> entry : orderings.entrySet()) {
+            // Ordering by id is by id alone, which is the tie-break of every ordering
+            String value = (entry.getKey().equals("id")) ? (null) : (user.getSortValue(entry.getKey()));
+            entry.getValue().put(user.id, value);
+        }
+    }
+
+
+    /**
+     * Removes a user from the index.
+     *
+     * @param id  The user id.
+     */
+    public static void remove(Long id) {
+        fullnames.remove(id);
+        memberships.removeMember(id);
+        for (SortedIdIndex ordering : orderings.values()) {
+            ordering.remove(id);
+        }
+    }
+
+
+    /**
+     * Records that a user was added to a group.
+     *
+     * @param id       The user id.
+     * @param groupId  The group id.
+     */
+    public static void addToGroup(Long id, Long groupId) {
+        memberships.add(id, groupId);
+    }
+
+
+    /**
+     * Records that a user was removed from a group.
+     *
+     * @param id       The user id.
+     * @param groupId  The group id.
+     */
+    public static void removeFromGroup(Long id, Long groupId) {
+        memberships.remove(id, groupId);
+    }
+
+
+    /**
+     * Records that a user was removed from all groups.
+     *
+     * @param id  The user id.
+     */
+    public static void removeFromAllGroups(Long id) {
+        memberships.removeMember(id);
+    }
+
+
+    /**
+     * Returns the users in a group.
+     *
+     * @param groupId  The group id.
+     * @return BitSet  The user ids.
+     */
+    public static BitSet byGroup(Long groupId) {
+        return memberships.getMembers(groupId);
+    }
+
+
+    /**
+     * Finds the users whose full name contains a substring, ignoring case.
+     *
+     * @param substring   The substring.
+     * @return Set<Long>  The user ids.
+     */
+    public static Set<Long> searchFullnames(String substring) {
+        return fullnames.search(substring);
+    }
+
+
+    /**
+     * Returns a page of user ids in sort order.
+     *
+     * @param sortBy       The sort column (one of User.SORT_COLUMNS).
+     * @param ascending    True for ascending order, false for descending.
+     * @param selection    Only include these user ids (null to include all).
+     * @param offset       The number of users to skip.
+     * @param limit        The maximum number of users.
+     * @return List<Long>  The user ids, in order.
+     */
+    public static List<Long> sortedSlice(String sortBy, boolean ascending, BitSet selection, int offset, int limit) {
+        return orderings.get(sortBy).slice(selection, ascending, offset, limit);
+    }
+
+
+    /**
+     * Returns the user ids next to a keyset cursor's position in sort order (see SortedIdIndex.seek).
+     *
+     * @param sortBy       The sort column (one of User.SORT_COLUMNS).
+     * @param ascending    True for ascending order, false for descending.
+     * @param selection    Only include these user ids (null to include all).
+     * @param position     The cursor's position.
+     * @param limit        The maximum number of users.
+     * @return List<Long>  The user ids, in scan order.
+     */
+    public static List<Long> seek(String sortBy, boolean ascending, BitSet selection, KeysetCursor position,
+                                  int limit) {
+        // Ordering by id is by id alone (see put), so the cursor's value isn't used
+        String value = (sortBy.equals("id")) ? (null) : (position.value);
+        return orderings.get(sortBy).seek(selection, ascending, position.before, value, position.id, limit);
+    }
+
+
+}
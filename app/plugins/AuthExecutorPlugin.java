@@ -0,0 +1,176 @@
+package plugins;
+
+import play.Application;
+import play.Logger;
+import play.Plugin;
+import play.libs.F.Function0;
+import play.libs.F.Promise;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.ExecutionContext$;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs credential hashing and verification on a small, bounded thread pool, away from Play's default dispatcher.
+ * A burst of logins can only fill this pool's queue; further attempts are rejected straight away (back-pressure)
+ * instead of taking threads from ordinary page requests.
+ * The pool counts submitted, completed, failed and rejected tasks and the time spent running them.
+ *
+ * Configuration (optional): auth.pool.threads (default 2) and auth.pool.queue (default 50).
+ *
+ * Date:        18/10/26
+ * Time:        04:37
+ *
+ * @version     1.0
+ */
+public class AuthExecutorPlugin extends Plugin {
+
+    public static final String AUTH_POOL_THREADS = "auth.pool.threads";
+    public static final String AUTH_POOL_QUEUE   = "auth.pool.queue";
+    private static final int   DEFAULT_THREADS   = 2;
+    private static final int   DEFAULT_QUEUE     = 50;
+
+    private final Application application;
+    private static ThreadPoolExecutor executor;
+    private static ExecutionContext   context;
+
+    // Instrumentation
+    private static final AtomicLong submitted   = new AtomicLong();
+    private static final AtomicLong completed   = new AtomicLong();
+    private static final AtomicLong failed      = new AtomicLong();
+    private static final AtomicLong rejected    = new AtomicLong();
+    private static final AtomicLong busyNanos   = new AtomicLong();
+
+
+    /**
+     * Constructor.
+     * @param application The application
+     */
+    public AuthExecutorPlugin(Application application) {
+        this.application = application;
+    }
+
+
+    /*
+     * Creates the thread pool.
+     */
+    @Override
+    public void onStart() {
+        int threads = getConfigInt(AUTH_POOL_THREADS, DEFAULT_THREADS);
+        int queueSize = getConfigInt(AUTH_POOL_QUEUE, DEFAULT_QUEUE);
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(queueSize),
+                                          new AuthThreadFactory(),
+                                          new ThreadPoolExecutor.AbortPolicy());
+        context = ExecutionContext$.MODULE$.fromExecutorService(executor);
+        Logger.info("Credential pool started with " + threads + " threads and a queue of " + queueSize);
+    }
+
+
+    /*
+     * Shuts down the thread pool.
+     */
+    @Override
+    public void onStop() {
+        if (executor != null) {
+            executor.shutdown();
+            Logger.info("Credential pool stopped. " + getStats());
+            executor = null;
+            context = null;
+        }
+    }
+
+
+    /**
+     * Runs a credential task on the pool.
+     *
+     * @param task   The task, e.g. hashing and checking a password.
+     * @return Promise<A>  The task's result.
+     * @throws RejectedExecutionException  If the pool's queue is full.
+     */
+    public static <A> Promise<A> submit(final Function0<A> task) throws RejectedExecutionException {
+        ExecutionContext ec = context;
+        if (ec == null) { // The plugin hasn't been started, e.g. in a unit test
+            try {
+                return Promise.pure(task.apply());
+            } catch (Throwable t) {
+                return Promise.throwing(t);
+            }
+        }
+        submitted.incrementAndGet();
+        try {
+            return Promise.promise(new Function0<A>() {
+                public A apply() throws Throwable {
+                    long start = System.nanoTime();
+                    try {
+                        A result = task.apply();
+                        completed.incrementAndGet();
+                        return result;
+                    } catch (Throwable t) {
+                        failed.incrementAndGet();
+                        throw t;
+                    } finally {
+                        busyNanos.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            }, ec);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            Logger.warn("Credential pool is full, request rejected. " + getStats());
+            throw e;
+        }
+    }
+
+
+    /**
+     * Returns the pool's counters as a string for logging.
+     *
+     * @return String  The counters.
+     */
+    public static String getStats() {
+        ThreadPoolExecutor pool = executor;
+        long done = completed.get() + failed.get();
+        return "submitted: " + submitted.get() +
+               ", completed: " + completed.get() +
+               ", failed: " + failed.get() +
+               ", rejected: " + rejected.get() +
+               ", active: " + ((pool == null) ? (0) : (pool.getActiveCount())) +
+               ", queued: " + ((pool == null) ? (0) : (pool.getQueue().size())) +
+               ", avg ms: " + ((done == 0) ? (0) : (busyNanos.get() / done / 1000000));
+    }
+
+
+    /**
+     * Gets an integer from the configuration.
+     *
+     * @param key           The configuration key.
+     * @param defaultValue  The value to use if the key isn't set.
+     * @return int  The value.
+     */
+    private int getConfigInt(String key, int defaultValue) {
+        Integer value = application.configuration().getInt(key);
+        return (value == null) ? (defaultValue) : (value);
+    }
+
+
+    /**
+     * Creates named daemon threads so the pool shows up clearly in thread dumps.
+     */
+    private static class AuthThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "auth-pool-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+
+}
@@ -0,0 +1,207 @@
+package plugins;
+
+import models.UserCache;
+import play.Application;
+import play.Logger;
+import play.Plugin;
+import play.db.DB;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records user logins in memory and writes them to user.lastlogin in the background (write-behind).
+ * Logins are buffered per user, so a user who logs in or calls the API many times between flushes costs one update.
+ * The buffer is flushed on a fixed interval and when the application stops, using one JDBC batch per flush.
+ * Each update also increments the user's version, so the user's ETag changes (see models.EntityVersions); the users
+ * embedded in other JSON leave out the last login, so their versions don't need to change.
+ *
+ * Configuration (optional): lastlogin.flush.seconds (default 60).
+ *
+ * Date:        18/10/26
+ * Time:        04:39
+ *
+ * @version     1.0
+ */
+public class LastLoginPlugin extends Plugin {
+
+    public static final String  LASTLOGIN_FLUSH_SECONDS = "lastlogin.flush.seconds";
+    private static final int    DEFAULT_FLUSH_SECONDS   = 60;
+    private static final String UPDATE_SQL              = "update user set lastlogin = ?, version = version + 1 where id = ?";
+
+    private final Application application;
+    private static ScheduledExecutorService scheduler;
+
+    // User id and the time of the user's latest login, waiting to be written
+    private static final ConcurrentHashMap<Long,Long> pending = new ConcurrentHashMap<Long,Long>();
+
+
+    /**
+     * Constructor.
+     * @param application The application
+     */
+    public LastLoginPlugin(Application application) {
+        this.application = application;
+    }
+
+
+    /*
+     * Starts the background flusher.
+     */
+    @Override
+    public void onStart() {
+        Integer seconds = application.configuration().getInt(LASTLOGIN_FLUSH_SECONDS);
+        long interval = (seconds == null) ? (DEFAULT_FLUSH_SECONDS) : (seconds);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "lastlogin-flusher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+
+    /*
+     * Stops the flusher and writes any logins still in the buffer.
+     */
+    @Override
+    public void onStop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        flush();
+    }
+
+
+    /**
+     * Records a login. Only the latest login per user is kept until the next flush.
+     *
+     * @param userId  The user id.
+     */
+    public static void record(Long userId) {
+        if (userId != null) {
+            pending.put(userId, System.currentTimeMillis());
+        }
+    }
+
+
+    /**
+     * Returns the login time of a user waiting to be written.
+     *
+     * @param userId  The user id.
+     * @return Long   The time in milliseconds, or null if there's none.
+     */
+    public static Long getPending(Long userId) {
+        return pending.get(userId);
+    }
+
+
+    /**
+     * Writes the buffered logins in one JDBC batch.
+     */
+    public static void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Connection connection;
+        try {
+            connection = DB.getConnection();
+        } catch (Exception e) {
+            Logger.error("Could not get a connection to write last login times", e); // Left for the next flush
+            return;
+        }
+        flush(connection);
+    }
+
+
+    /**
+     * Writes the buffered logins in one JDBC batch on the connection, which is then closed.
+     * Logins that fail to be written are put back for the next flush, unless the user has logged in again since.
+     *
+     * @param connection  The connection.
+     */
+    public static synchronized void flush(Connection connection) {
+        // Take the logins out of the buffer (logins recorded meanwhile stay for the next flush)
+        Map<Long,Long> batch = new LinkedHashMap<Long,Long>();
+        for (Long userId : pending.keySet()) {
+            Long time = pending.remove(userId);
+            if (time != null) {
+                batch.put(userId, time);
+            }
+        }
+        if (batch.isEmpty()) {
+            close(null, connection);
+            return;
+        }
+
+        PreparedStatement statement = null;
+        try {
+            statement = connection.prepareStatement(UPDATE_SQL);
+            for (Map.Entry<Long,Long> entry : batch.entrySet()) {
+                statement.setTimestamp(1, new Timestamp(entry.getValue()));
+                statement.setLong(2, entry.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+
+            // Cached users hold the old lastlogin
+            for (Map.Entry<Long,Long> entry : batch.entrySet()) {
+                UserCache.setLastLogin(entry.getKey(), entry.getValue());
+            }
+        } catch (Exception e) {
+            Logger.error("Could not write " + batch.size() + " last login times", e);
+            for (Map.Entry<Long,Long> entry : batch.entrySet()) {
+                pending.putIfAbsent(entry.getKey(), entry.getValue()); // Keep any newer login
+            }
+        } finally {
+            close(statement, connection);
+        }
+    }
+
+
+    /**
+     * Closes the statement and connection, ignoring errors.
+     *
+     * @param statement   The statement (may be null).
+     * @param connection  The connection (may be null).
+     */
+    private static void close(PreparedStatement statement, Connection connection) {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            // Nothing more to do
+        }
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            // Nothing more to do
+        }
+    }
+
+
+}
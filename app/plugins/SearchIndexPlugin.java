@@ -0,0 +1,41 @@
+package plugins;
+
+import models.AnalystIndex;
+import models.UserIndex;
+import play.Application;
+import play.Plugin;
+
+/**
+ * Builds the in-memory analyst and user search indexes when the application starts.
+ * Saves and deletes keep them up to date from then on (see models.AnalystIndex and models.UserIndex).
+ *
+ * Date:        18/10/26
+ * Time:        04:45
+ *
+ * @version     1.0
+ */
+public class SearchIndexPlugin extends Plugin {
+
+    private final Application application;
+
+
+    /**
+     * Constructor.
+     * @param application The application
+     */
+    public SearchIndexPlugin(Application application) {
+        this.application = application;
+    }
+
+
+    /*
+     * Builds the indexes.
+     */
+    @Override
+    public void onStart() {
+        AnalystIndex.rebuild();
+        UserIndex.rebuild();
+    }
+
+
+}
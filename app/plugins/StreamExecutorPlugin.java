@@ -0,0 +1,97 @@
+package plugins;
+
+import play.Application;
+import play.Logger;
+import play.Plugin;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.ExecutionContext$;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the production of streamed response chunks (see utils.JsonChunks) on a small thread pool of its own, so
+ * the DB reads behind a long stream don't take threads from Play's default dispatcher or its internal context.
+ * Each task produces one chunk, when the client has taken the previous one, so the pool only holds chunks that are
+ * about to be sent.
+ *
+ * Configuration (optional): stream.pool.threads (default 2).
+ *
+ * Date:        18/10/26
+ * Time:        05:26
+ *
+ * @version     1.0
+ */
+public class StreamExecutorPlugin extends Plugin {
+
+    public static final String STREAM_POOL_THREADS = "stream.pool.threads";
+    private static final int   DEFAULT_THREADS     = 2;
+
+    private final Application application;
+    private static ExecutorService  executor;
+    private static ExecutionContext context;
+
+
+    /**
+     * Constructor.
+     * @param application The application
+     */
+    public StreamExecutorPlugin(Application application) {
+        this.application = application;
+    }
+
+
+    /*
+     * Creates the thread pool.
+     */
+    @Override
+    public void onStart() {
+        Integer value = application.configuration().getInt(STREAM_POOL_THREADS);
+        int threads = (value == null) ? (DEFAULT_THREADS) : (value);
+        executor = Executors.newFixedThreadPool(threads, new StreamThreadFactory());
+        context = ExecutionContext$.MODULE$.fromExecutorService(executor);
+        Logger.info("Stream pool started with " + threads + " threads");
+    }
+
+
+    /*
+     * Shuts down the thread pool.
+     */
+    @Override
+    public void onStop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            context = null;
+        }
+    }
+
+
+    /**
+     * Returns the execution context that produces stream chunks.
+     *
+     * @return ExecutionContext  The pool's context, or Scala's global context if the plugin hasn't been started.
+     */
+    public static ExecutionContext getContext() {
+        ExecutionContext ec = context;
+        return (ec == null) ? (ExecutionContext$.MODULE$.global()) : (ec);
+    }
+
+
+    /**
+     * Creates named daemon threads so the pool shows up clearly in thread dumps.
+     */
+    private static class StreamThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "stream-pool-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+
+}
@@ -0,0 +1,136 @@
+package utils;
+
+import play.libs.Crypto;
+
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues and verifies stateless, signed bearer tokens for the JSON API.
+ * A token holds the username, an expiry time and a random token id, signed with the application secret (HMAC),
+ * so it can be verified in memory without hashing a password or querying the DB.
+ * Revoked tokens are kept in a small in-memory deny-list until they expire.
+ *
+ * Token format: tokenId.expiryMillis.hexUsername.signature
+ *
+ * Date:        18/10/26
+ * Time:        04:36
+ *
+ * @version     1.0
+ */
+public class AuthTokens {
+
+    // Constants
+    public static final long   TTL_MILLIS     = 60 * 60 * 1000; // Tokens expire after 1 hour
+    public static final String BEARER_PREFIX  = "Bearer ";
+    private static final int   TOKEN_ID_BYTES = 16;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    // Revoked token ids and their expiry times
+    private static final Map<String,Long> denyList = new ConcurrentHashMap<String,Long>();
+
+
+    /**
+     * Issues a new token for the user.
+     *
+     * @param username  The authenticated username.
+     * @return String   The signed token.
+     */
+    public static String issue(String username) {
+        byte[] tokenId = new byte[TOKEN_ID_BYTES];
+        random.nextBytes(tokenId);
+        long expires = System.currentTimeMillis() + TTL_MILLIS;
+        String payload = Utils.toHex(tokenId) + "." + expires + "." + Utils.toHex(username.getBytes(Utils.UTF8));
+        return payload + "." + Crypto.sign(payload);
+    }
+
+
+    /**
+     * Returns the expiry time of a token (the token must have been verified).
+     *
+     * @param token  The token.
+     * @return long  The expiry time in milliseconds.
+     */
+    public static long getExpiry(String token) {
+        String[] parts = token.split("\\.");
+        return Long.parseLong(parts[1]);
+    }
+
+
+    /**
+     * Verifies the token's signature and expiry and checks that it hasn't been revoked.
+     *
+     * @param token     The token.
+     * @return String   The username, or null if the token isn't valid.
+     */
+    public static String verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            String payload = parts[0] + "." + parts[1] + "." + parts[2];
+            String signature = Crypto.sign(payload);
+            if (!MessageDigest.isEqual(signature.getBytes(Utils.UTF8), parts[3].getBytes(Utils.UTF8))) {
+                return null;
+            }
+            if (Long.parseLong(parts[1]) < System.currentTimeMillis()) {
+                return null; // Expired
+            }
+            if (denyList.containsKey(parts[0])) {
+                return null; // Revoked
+            }
+            return new String(Utils.fromHex(parts[2]), Utils.UTF8);
+        } catch (IllegalArgumentException e) { // Includes NumberFormatException
+            return null;
+        }
+    }
+
+
+    /**
+     * Revokes a valid token until it expires. Expired entries are removed from the deny-list at the same time.
+     *
+     * @param token     The token.
+     * @return boolean  True if the token was valid and has been revoked.
+     */
+    public static boolean revoke(String token) {
+        if (verify(token) == null) {
+            return false;
+        }
+        String[] parts = token.split("\\.");
+        denyList.put(parts[0], Long.parseLong(parts[1]));
+
+        // Expired tokens are rejected anyway, so there's no need to remember them
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String,Long>> it = denyList.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() < now) {
+                it.remove();
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Gets the token from an "Authorization: Bearer <token>" header value.
+     *
+     * @param header    The header value (may be null).
+     * @return String   The token, or null if not a bearer token.
+     */
+    public static String fromHeader(String header) {
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            return header.substring(BEARER_PREFIX.length()).trim();
+        }
+        return null;
+    }
+
+
+}
@@ -0,0 +1,160 @@
+package utils;
+
+import play.api.mvc.RequestHeader;
+import play.api.mvc.ResponseHeader;
+import play.filters.gzip.GzipFilter;
+import play.mvc.Http;
+import scala.Option;
+import scala.runtime.AbstractFunction2;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips responses for clients that accept it (Accept-Encoding), for the content types that compress well:
+ * JSON, HTML, CSS and JavaScript. Responses smaller than MIN_SIZE are sent as they are, as compressing them
+ * would cost more than it saves; streamed responses (e.g. all analysts as JSON) have no length and are compressed
+ * as they're sent. Responses that are already encoded are left alone. The Deflaters are pooled rather than created
+ * for each response (see PooledGzip).
+ *
+ * A compressed response keeps the ETag set by the action, so ETags name the coding a response may be sent with
+ * (see mayCompress and AbstractController.isNotModified), and a strong ETag never covers two different encodings.
+ *
+ * Date:        18/10/26
+ * Time:        05:08
+ *
+ * @version     1.0
+ */
+public class CompressionFilter extends GzipFilter {
+
+    // Constants
+    public static final int     MIN_SIZE            = 1024;     // Smallest response compressed, in bytes
+    private static final int    BUFFER_SIZE         = 8192;     // Compressed bytes per chunk
+    private static final int    CHUNKED_THRESHOLD   = 102400;   // Larger responses are compressed as they're sent
+    private static final int    POOL_SIZE           = 32;       // Idle Deflaters kept between responses
+
+    private static final List<String> TYPES = Arrays.asList("application/json", "text/json", "text/html", "text/css",
+                                                            "application/javascript", "text/javascript");
+
+    private static final DeflaterPool DEFLATERS = new DeflaterPool(POOL_SIZE, Deflater.DEFAULT_COMPRESSION);
+
+
+    /**
+     * Constructor.
+     */
+    public CompressionFilter() {
+        super(PooledGzip.gzip(DEFLATERS, BUFFER_SIZE), CHUNKED_THRESHOLD,
+              new AbstractFunction2<RequestHeader,ResponseHeader,Object>() {
+                  public Object apply(RequestHeader request, ResponseHeader response) {
+                      return shouldCompress(response);
+                  }
+              });
+    }
+
+
+    /**
+     * Returns true if a response should be compressed (see the other shouldCompress).
+     *
+     * @param response  The response's header.
+     * @return boolean  True to compress.
+     */
+    static boolean shouldCompress(ResponseHeader response) {
+        return shouldCompress(getHeader(response, Http.HeaderNames.CONTENT_TYPE),
+                              getHeader(response, Http.HeaderNames.CONTENT_ENCODING),
+                              getHeader(response, Http.HeaderNames.CONTENT_LENGTH));
+    }
+
+
+    /**
+     * Returns true if a response should be compressed: it's of a type that compresses well, isn't already encoded
+     * and is either streamed or at least MIN_SIZE bytes.
+     *
+     * @param contentType      The Content-Type header (null if none).
+     * @param contentEncoding  The Content-Encoding header (null if none).
+     * @param contentLength    The Content-Length header (null if streamed).
+     * @return boolean  True to compress.
+     */
+    public static boolean shouldCompress(String contentType, String contentEncoding, String contentLength) {
+        if (contentType == null || !TYPES.contains(getMediaType(contentType))) {
+            return false;
+        }
+        if (contentEncoding != null) {
+            return false;
+        }
+        if (contentLength == null) {
+            return true; // Streamed
+        }
+        try {
+            return Long.parseLong(contentLength.trim()) >= MIN_SIZE;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * Returns true if a response of a content type may be compressed for a request: the request accepts gzip
+     * and the type compresses well. Whether it's compressed also depends on its size, which is the same for the same
+     * content, so an ETag that names the coding when this is true always covers the same bytes.
+     * Any acceptance of gzip counts (even through "*"), so a response that's compressed is never missed.
+     *
+     * @param contentType     The response's content type.
+     * @param acceptEncoding  The request's Accept-Encoding header (null if none).
+     * @return boolean        True if the response may be compressed.
+     */
+    public static boolean mayCompress(String contentType, String acceptEncoding) {
+        if (acceptEncoding == null || !shouldCompress(contentType, null, null)) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            if (name.equals("gzip") || name.equals("*")) {
+                boolean refused = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            refused = Double.parseDouble(parameter.substring(2).trim()) <= 0.0;
+                        } catch (NumberFormatException e) {
+                            refused = false;
+                        }
+                    }
+                }
+                if (!refused) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Returns a response header's value.
+     *
+     * @param response  The response's header.
+     * @param name      The header name.
+     * @return String   The value, or null if the header isn't set.
+     */
+    private static String getHeader(ResponseHeader response, String name) {
+        Option<String> value = response.headers().get(name);
+        return (value.isEmpty()) ? (null) : (value.get());
+    }
+
+
+    /**
+     * Returns the media type of a content type, without its parameters, e.g. text/html for text/html; charset=utf-8.
+     *
+     * @param contentType  The content type.
+     * @return String      The media type, in lower case.
+     */
+    static String getMediaType(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String mediaType = (semicolon < 0) ? (contentType) : (contentType.substring(0, semicolon));
+        return mediaType.trim().toLowerCase();
+    }
+
+
+}
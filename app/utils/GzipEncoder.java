@@ -0,0 +1,149 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips one response a chunk at a time, with a Deflater borrowed from a pool (see DeflaterPool and PooledGzip).
+ * The output is the gzip header, the deflated chunks and the trailer (CRC-32 and length), as GZIPOutputStream
+ * writes them. Compressed bytes are held back until there are at least "bufferSize" of them, so the response isn't
+ * sent in many small chunks.
+ *
+ * The Deflater goes back to the pool when the response is finished, or when release is called because
+ * the response was abandoned (e.g. the client went away). A response that's never finished nor released
+ * doesn't empty the pool, as borrowing creates a Deflater when none is idle, and its Deflater is ended when it's
+ * garbage collected.
+ *
+ * Date:        18/10/26
+ * Time:        05:58
+ *
+ * @version     1.0
+ */
+public class GzipEncoder {
+
+    // Constants
+    private static final byte[] HEADER  = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+    private static final byte[] NONE    = new byte[0];
+
+    private final DeflaterPool          pool;
+    private final int                   bufferSize;
+    private final CRC32                 crc = new CRC32();
+    private final ByteArrayOutputStream pending;
+    private final byte[]                buffer;
+    private Deflater                    deflater;
+    private long                        length;
+
+
+    /**
+     * Constructor, which borrows a Deflater from the pool.
+     *
+     * @param pool        The pool.
+     * @param bufferSize  Minimum number of compressed bytes returned at a time (except by finish).
+     */
+    public GzipEncoder(DeflaterPool pool, int bufferSize) {
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+        this.pending = new ByteArrayOutputStream(bufferSize + HEADER.length);
+        this.buffer = new byte[bufferSize];
+        this.deflater = pool.borrow();
+        this.pending.write(HEADER, 0, HEADER.length);
+    }
+
+
+    /**
+     * Compresses a chunk of the response.
+     *
+     * @param bytes     The chunk.
+     * @return byte[]   The compressed bytes, if there are at least bufferSize of them, otherwise an empty array.
+     * @throws IllegalStateException  If the response is finished or was released.
+     */
+    public synchronized byte[] compress(byte[] bytes) {
+        checkOpen();
+        crc.update(bytes, 0, bytes.length);
+        length += bytes.length;
+        deflater.setInput(bytes);
+        while (!deflater.needsInput()) {
+            drain();
+        }
+        return (pending.size() < bufferSize) ? (NONE) : (take());
+    }
+
+
+    /**
+     * Finishes the response and gives the Deflater back to the pool.
+     *
+     * @return byte[]  The remaining compressed bytes and the gzip trailer.
+     * @throws IllegalStateException  If the response is finished or was released.
+     */
+    public synchronized byte[] finish() {
+        checkOpen();
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+            writeInt((int) crc.getValue());
+            writeInt((int) length); // The length modulo 2^32
+            return take();
+        } finally {
+            release();
+        }
+    }
+
+
+    /**
+     * Gives the Deflater back to the pool, if it hasn't been already; the response can't be compressed any more.
+     */
+    public synchronized void release() {
+        if (deflater != null) {
+            pool.release(deflater);
+            deflater = null;
+        }
+    }
+
+
+    /**
+     * Moves the bytes the Deflater has compressed to the pending bytes.
+     */
+    private void drain() {
+        int count = deflater.deflate(buffer, 0, buffer.length);
+        pending.write(buffer, 0, count);
+    }
+
+
+    /**
+     * Returns the pending bytes and clears them.
+     *
+     * @return byte[]  The pending bytes.
+     */
+    private byte[] take() {
+        byte[] bytes = pending.toByteArray();
+        pending.reset();
+        return bytes;
+    }
+
+
+    /**
+     * Writes an int to the pending bytes, least significant byte first, as gzip stores its numbers.
+     *
+     * @param value  The int.
+     */
+    private void writeInt(int value) {
+        for (int i = 0; i < 4; i++) {
+            pending.write(value >>> (8 * i));
+        }
+    }
+
+
+    /**
+     * Checks that the Deflater hasn't been given back.
+     */
+    private void checkOpen() {
+        if (deflater == null) {
+            throw new IllegalStateException("The gzip encoder has been released");
+        }
+    }
+
+
+}
@@ -0,0 +1,172 @@
+package utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import play.api.http.Writeable$;
+import play.api.libs.iteratee.Enumerator;
+import play.api.libs.iteratee.Enumerator$;
+import play.api.mvc.Results$;
+import play.mvc.SimpleResult;
+import plugins.StreamExecutorPlugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A chunked JSON response body that's produced on demand. Subclasses write the JSON a part at a time (e.g. a batch
+ * of rows), and the next part is only written when the client has taken the previous chunk, so a large response is
+ * never held in memory and a slow client slows down the reads instead of letting chunks pile up.
+ * The parts are written on the stream pool (see StreamExecutorPlugin). The JSON is UTF-8 text or, if asked for,
+ * Smile (see JsonEncoding), and a part can append values already encoded (e.g. cached) rather than re-encode them.
+ *
+ * The JSON is written after the action has returned, so anything that needs the request (e.g. the logged-in user)
+ * must be resolved beforehand.
+ *
+ * Date:        18/10/26
+ * Time:        04:56
+ *
+ * @version     1.0
+ */
+public abstract class JsonChunks {
+
+    // Constants
+    private static final int    CHUNK_SIZE  = 8192;
+
+    private final boolean       smile;
+
+
+    /**
+     * Constructor for text JSON.
+     */
+    public JsonChunks() {
+        this(false);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param smile  True to write Smile rather than text JSON.
+     */
+    public JsonChunks(boolean smile) {
+        this.smile = smile;
+    }
+
+
+    /**
+     * Returns the response's content type.
+     *
+     * @return String  The content type.
+     */
+    public String getContentType() {
+        return (smile) ? (JsonEncoding.SMILE) : (JsonEncoding.JSON);
+    }
+
+
+    /**
+     * Returns a 200 OK result whose chunks are read from the JSON as the client takes them.
+     *
+     * @return SimpleResult  The result.
+     */
+    public SimpleResult toResult() {
+        final Enumerator<byte[]> body = Enumerator$.MODULE$.fromStream(toStream(), CHUNK_SIZE,
+                                                                       StreamExecutorPlugin.getContext());
+        return new SimpleResult() {
+            public play.api.mvc.SimpleResult getWrappedSimpleResult() {
+                return Results$.MODULE$.Ok().chunked(body, Writeable$.MODULE$.wBytes());
+            }
+        };
+    }
+
+
+    /**
+     * Returns the JSON as a stream that writes the next part whenever what's been written has all been read.
+     * Closing the stream before the end stops the writing.
+     *
+     * @return InputStream  The stream.
+     */
+    public InputStream toStream() {
+        return new PartStream();
+    }
+
+
+    /**
+     * Writes the next part of the JSON. The generator is the same for every part, so a part can continue
+     * the objects and arrays opened by the previous one. Encoded values can be appended to the stream
+     * directly, after flushing the generator (see JsonEncoding.createGenerator).
+     *
+     * @param generator     The generator to write to.
+     * @param out           The stream the generator writes to.
+     * @return boolean      True if there's more to write, false if this was the last part.
+     * @throws IOException  If the JSON can't be written.
+     */
+    protected abstract boolean writeNext(JsonGenerator generator, OutputStream out) throws IOException;
+
+
+    /**
+     * A stream that writes the next part of the JSON whenever what's been written has all been read.
+     */
+    private class PartStream extends InputStream {
+        private final ByteArrayOutputStream     buffer = new ByteArrayOutputStream(CHUNK_SIZE);
+        private JsonGenerator                   generator;
+        private byte[]                          part = new byte[0];
+        private int                             position;
+        private boolean                         finished;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return (read(one, 0, 1) < 0) ? (-1) : (one[0] & 0xff);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            while (position == part.length) {
+                if (finished) {
+                    return -1;
+                }
+                writePart();
+            }
+            int count = Math.min(length, part.length - position);
+            System.arraycopy(part, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) { // The client went away, so stop writing
+                finished = true;
+                if (generator != null) {
+                    generator.close();
+                }
+            }
+        }
+
+        private void writePart() throws IOException {
+            buffer.reset();
+            if (generator == null) {
+                generator = JsonEncoding.createGenerator(smile, buffer);
+            }
+            try {
+                finished = !writeNext(generator, buffer);
+            } catch (IOException e) {
+                Utils.eHandler("JsonChunks.writeNext()", e); // The client gets incomplete JSON
+                finished = true;
+            } catch (RuntimeException e) {
+                Utils.eHandler("JsonChunks.writeNext()", e);
+                finished = true;
+            }
+            if (finished) {
+                generator.close(); // Flushes the generator and closes the buffer
+            } else {
+                generator.flush();
+            }
+            part = buffer.toByteArray();
+            position = 0;
+        }
+    }
+
+
+}
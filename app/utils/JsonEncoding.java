@@ -0,0 +1,242 @@
+package utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encodes the JSON document model as text JSON or as Smile, Jackson's binary JSON, which is smaller and faster to
+ * parse for machine clients. Clients ask for Smile with an Accept header of application/x-jackson-smile
+ * (see prefersSmile); the documents are the same either way.
+ *
+ * Cached fragments (e.g. analysts' JSON) can be joined into a document in either encoding without re-encoding them
+ * (see join), or appended to a streamed document (see createGenerator). Smile fragments are written without
+ * the Smile header or back-references to earlier names and values, so each one stands alone.
+ *
+ * Date:        18/10/26
+ * Time:        05:11
+ *
+ * @version     1.0
+ */
+public final class JsonEncoding {
+
+    // Constants
+    public static final String  SMILE       = "application/x-jackson-smile";
+    public static final String  JSON        = "application/json; charset=utf-8";
+
+    private static final ObjectMapper   json    = new ObjectMapper();
+    private static final ObjectMapper   smile   = new ObjectMapper(new SmileFactory());
+    private static final ObjectMapper   parts   = new ObjectMapper(new SmileFactory()
+            .configure(SmileGenerator.Feature.WRITE_HEADER, false)
+            .configure(SmileGenerator.Feature.CHECK_SHARED_NAMES, false)
+            .configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES, false));
+
+    // The Smile header for documents joined from fragments: version 0, no shared names or values, no raw binary
+    private static final byte[]         SMILE_HEADER = {':', ')', '\n', 0};
+
+
+    /**
+     * Static methods only.
+     */
+    private JsonEncoding() {
+    }
+
+
+    /**
+     * Returns true if an Accept header prefers Smile to every other media type: Smile has the highest quality
+     * (q) value, and comes first among the types with that value. Wildcards never select Smile.
+     *
+     * @param accept    The Accept header (may be null).
+     * @return boolean  True if Smile is preferred.
+     */
+    public static boolean prefersSmile(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        String preferred = null;
+        double best = 0.0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String mediaType = parts[0].trim().toLowerCase();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0.0;
+                    }
+                }
+            }
+            if (quality > best) {
+                best = quality;
+                preferred = mediaType;
+            }
+        }
+        return SMILE.equals(preferred);
+    }
+
+
+    /**
+     * Creates a generator for a document, as text JSON or Smile, that encoded values can be appended to between
+     * the generator's own writes (e.g. a streamed response, see JsonChunks): flush the generator, then write the
+     * values to the stream, with commas between them for text JSON. Smile starts with the header for joined
+     * documents and has no back-references, so Smile fragments (see toSmileFragment) can be appended.
+     *
+     * @param binary          True for Smile.
+     * @param out             The stream to write to.
+     * @return JsonGenerator  The generator, which can write trees.
+     * @throws IOException    If the Smile header can't be written.
+     */
+    public static JsonGenerator createGenerator(boolean binary, OutputStream out) throws IOException {
+        if (binary) {
+            out.write(SMILE_HEADER);
+            return parts.getFactory().createGenerator(out);
+        }
+        return json.getFactory().createGenerator(out);
+    }
+
+
+    /**
+     * Encodes a document as text JSON.
+     *
+     * @param node     The document.
+     * @return byte[]  The JSON as UTF-8.
+     */
+    public static byte[] toJson(JsonNode node) {
+        return write(json, node);
+    }
+
+
+    /**
+     * Encodes a document as Smile.
+     *
+     * @param node     The document.
+     * @return byte[]  The Smile.
+     */
+    public static byte[] toSmile(JsonNode node) {
+        return write(smile, node);
+    }
+
+
+    /**
+     * Decodes text JSON.
+     *
+     * @param bytes         The JSON as UTF-8.
+     * @return JsonNode     The document.
+     * @throws IOException  If the JSON is invalid.
+     */
+    public static JsonNode fromJson(byte[] bytes) throws IOException {
+        return json.readTree(bytes);
+    }
+
+
+    /**
+     * Decodes Smile.
+     *
+     * @param bytes         The Smile.
+     * @return JsonNode     The document.
+     * @throws IOException  If the Smile is invalid.
+     */
+    public static JsonNode fromSmile(byte[] bytes) throws IOException {
+        return smile.readTree(bytes);
+    }
+
+
+    /**
+     * Encodes a value as a Smile fragment, which can be joined with others into a document (see join and
+     * toSmileDocument).
+     *
+     * @param node     The value.
+     * @return byte[]  The Smile fragment.
+     */
+    public static byte[] toSmileFragment(JsonNode node) {
+        return write(parts, node);
+    }
+
+
+    /**
+     * Makes a Smile document of a single Smile fragment.
+     *
+     * @param fragment  The Smile fragment (see toSmileFragment).
+     * @return byte[]   The Smile document.
+     */
+    public static byte[] toSmileDocument(byte[] fragment) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(SMILE_HEADER.length + fragment.length);
+        out.write(SMILE_HEADER, 0, SMILE_HEADER.length);
+        out.write(fragment, 0, fragment.length);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Joins encoded values into a document that's an object with an array of the values, followed by other fields,
+     * e.g. { "analysts": [ ... ], "next": ... }. The values aren't re-encoded.
+     *
+     * @param binary    True if the values are Smile fragments (see toSmileFragment), false if they're text JSON.
+     * @param name      The array's field name.
+     * @param values    The encoded values.
+     * @param others    The other fields (may be empty).
+     * @return byte[]   The document, as Smile or as text JSON in UTF-8.
+     */
+    public static byte[] join(boolean binary, String name, List<byte[]> values, ObjectNode others) {
+        ObjectMapper mapper = (binary) ? (parts) : (json);
+        ObjectNode empty = JsonNodeFactory.instance.objectNode();
+        empty.putArray(name);
+        byte[] outline = write(mapper, empty); // The object start and field name, then the array's and object's ends
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (binary) {
+            out.write(SMILE_HEADER, 0, SMILE_HEADER.length);
+        }
+        out.write(outline, 0, outline.length - 2);
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0 && !binary) {
+                out.write(',');
+            }
+            byte[] value = values.get(i);
+            out.write(value, 0, value.length);
+        }
+        out.write(outline[outline.length - 2]);
+
+        // Append the other fields without the start of their object, which ends the document
+        byte[] rest = write(mapper, others);
+        if (rest.length > 2) {
+            if (!binary) {
+                out.write(',');
+            }
+            out.write(rest, 1, rest.length - 1);
+        } else {
+            out.write(outline[outline.length - 1]);
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Encodes a document.
+     *
+     * @param mapper   The mapper for the encoding.
+     * @param node     The document.
+     * @return byte[]  The encoded document.
+     */
+    private static byte[] write(ObjectMapper mapper, JsonNode node) {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("JSON tree can't be serialized", e); // Trees always serialize
+        }
+    }
+
+
+}
@@ -0,0 +1,132 @@
+package utils;
+
+/**
+ * A position in a list sorted on (sort column, id), used for keyset (seek) pagination.
+ * A page is read from the position in the list's in-memory ordering (see SortedIdIndex.seek), found by binary search,
+ * so it costs the same for every page, unlike an offset that has to skip all the earlier rows.
+ *
+ * Cursors are passed in the query string as:
+ *   "start"              The first page.
+ *   "a.[value].[id]"     The page after the row with the given sort value and id.
+ *   "b.[value].[id]"     The page before the row with the given sort value and id.
+ * The sort value is hex-encoded UTF-8, so any characters can be passed safely.
+ *
+ * Date:        18/10/26
+ * Time:        04:43
+ *
+ * @version     1.0
+ */
+public class KeysetCursor {
+
+    // Constants
+    public static final String START = "start";
+
+    public final boolean    before; // True to fetch the rows before the position, otherwise after
+    public final String     value;  // The sort value at the position, null for the start of the list
+    public final Long       id;     // The id at the position, null for the start of the list
+
+
+    /**
+     * A row of a list that can be paged with keyset cursors.
+     */
+    public interface Row {
+
+        /**
+         * Returns the row's value of a sort column.
+         *
+         * @param sortBy    The sort column.
+         * @return String   The value (may be null).
+         */
+        String getSortValue(String sortBy);
+
+        /**
+         * Returns the row's id, which breaks ties between rows with the same sort value.
+         *
+         * @return Long  The id.
+         */
+        Long getRowId();
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param before  True for the rows before the position.
+     * @param value   The sort value (null for the start).
+     * @param id      The id (null for the start).
+     */
+    private KeysetCursor(boolean before, String value, Long id) {
+        this.before = before;
+        this.value = value;
+        this.id = id;
+    }
+
+
+    /**
+     * Parses a cursor from the query string.
+     *
+     * @param cursor        The cursor.
+     * @return KeysetCursor The parsed cursor (the start of the list if the cursor isn't valid).
+     */
+    public static KeysetCursor parse(String cursor) {
+        if (cursor != null) {
+            String[] parts = cursor.split("\\.", -1);
+            if (parts.length == 3 && (parts[0].equals("a") || parts[0].equals("b"))) {
+                try {
+                    String value = new String(Utils.fromHex(parts[1]), Utils.UTF8);
+                    return new KeysetCursor(parts[0].equals("b"), value, Long.valueOf(parts[2]));
+                } catch (IllegalArgumentException e) { // Also catches NumberFormatException
+                    // Not a valid cursor, so start from the beginning
+                }
+            }
+        }
+        return new KeysetCursor(false, null, null);
+    }
+
+
+    /**
+     * Returns true if the cursor is the start of the list.
+     *
+     * @return boolean  True if at the start.
+     */
+    public boolean isStart() {
+        return id == null;
+    }
+
+
+    /**
+     * Returns a cursor for the rows after a position.
+     *
+     * @param value    The sort value of the last row shown.
+     * @param id       The id of the last row shown.
+     * @return String  The cursor.
+     */
+    public static String after(String value, Long id) {
+        return "a." + encode(value) + "." + id;
+    }
+
+
+    /**
+     * Returns a cursor for the rows before a position.
+     *
+     * @param value    The sort value of the first row shown.
+     * @param id       The id of the first row shown.
+     * @return String  The cursor.
+     */
+    public static String before(String value, Long id) {
+        return "b." + encode(value) + "." + id;
+    }
+
+
+    /**
+     * Hex-encodes a sort value.
+     *
+     * @param value    The sort value (null is encoded as an empty string).
+     * @return String  The encoded value.
+     */
+    private static String encode(String value) {
+        return Utils.toHex(((value == null) ? ("") : (value)).getBytes(Utils.UTF8));
+    }
+
+
+}
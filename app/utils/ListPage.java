@@ -0,0 +1,204 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of a list, either an offset page (with a page index) or a keyset page (with cursors to the pages
+ * either side, see KeysetCursor). List pages use it so they can render either kind.
+ * The total row count is supplied by the caller, so it can come from CountCache rather than a count per page,
+ * or be left out (-1) when it isn't wanted.
+ *
+ * Date:        18/10/26
+ * Time:        04:43
+ *
+ * @version     1.0
+ */
+public class ListPage<T> {
+
+    private final List<T>   list;
+    private final int       totalRowCount;
+    private final int       totalPageCount;
+    private final int       pageIndex;      // -1 for a keyset page
+    private final boolean   hasPrev;
+    private final boolean   hasNext;
+    private final String    prevCursor;     // Null for an offset page or the first keyset page
+    private final String    nextCursor;     // Null for an offset page or the last keyset page
+
+
+    /**
+     * Constructor.
+     *
+     * @param list            The rows on the page.
+     * @param totalRowCount   The total number of rows.
+     * @param totalPageCount  The total number of pages.
+     * @param pageIndex       The page index (-1 for a keyset page).
+     * @param hasPrev         True if there is a previous page.
+     * @param hasNext         True if there is a next page.
+     * @param prevCursor      The cursor for the previous page (keyset pages only).
+     * @param nextCursor      The cursor for the next page (keyset pages only).
+     */
+    public ListPage(List<T> list, int totalRowCount, int totalPageCount, int pageIndex,
+                    boolean hasPrev, boolean hasNext, String prevCursor, String nextCursor) {
+        this.list = list;
+        this.totalRowCount = totalRowCount;
+        this.totalPageCount = totalPageCount;
+        this.pageIndex = pageIndex;
+        this.hasPrev = hasPrev;
+        this.hasNext = hasNext;
+        this.prevCursor = prevCursor;
+        this.nextCursor = nextCursor;
+    }
+
+
+    /**
+     * Creates an offset page.
+     *
+     * @param list           The rows on the page.
+     * @param pageIndex      The page index (starts from 0).
+     * @param pageSize       The number of rows per page.
+     * @param totalRowCount  The total number of rows.
+     * @return ListPage<T>   The list page.
+     */
+    public static <T> ListPage<T> offset(List<T> list, int pageIndex, int pageSize, int totalRowCount) {
+        int pageCount = (totalRowCount + pageSize - 1) / pageSize;
+        return new ListPage<T>(list, totalRowCount, pageCount, pageIndex,
+                               pageIndex > 0, pageIndex < pageCount - 1, null, null);
+    }
+
+
+    /**
+     * Creates a keyset page from the rows next to the cursor's position, read by id from an in-memory ordering
+     * (see SortedIdIndex.seek), so every page costs the same as the first.
+     *
+     * @param scanned        The rows in scan order (following the position, or preceding it nearest first), with one
+     *                       more than the page size if there's another page in the scan direction.
+     * @param position       The cursor's position.
+     * @param pageSize       The number of rows per page.
+     * @param sortBy         The sort column.
+     * @param totalRowCount  The total number of rows (-1 if not counted).
+     * @return ListPage<T>   The list page with cursors to the pages either side.
+     */
+    public static <T extends KeysetCursor.Row> ListPage<T> keyset(List<T> scanned, KeysetCursor position,
+                                                                  int pageSize, String sortBy, int totalRowCount) {
+        List<T> rows = new ArrayList<T>(scanned);
+        boolean more = rows.size() > pageSize;
+        if (more) {
+            rows.remove(pageSize);
+        }
+        boolean hasPrev;
+        boolean hasNext;
+        if (position.before) {
+            Collections.reverse(rows);
+            hasPrev = more;
+            hasNext = true;
+        } else {
+            hasPrev = !position.isStart();
+            hasNext = more;
+        }
+
+        String prevCursor = null;
+        String nextCursor = null;
+        if (!rows.isEmpty()) {
+            T first = rows.get(0);
+            T last = rows.get(rows.size() - 1);
+            prevCursor = (hasPrev) ? (KeysetCursor.before(first.getSortValue(sortBy), first.getRowId())) : (null);
+            nextCursor = (hasNext) ? (KeysetCursor.after(last.getSortValue(sortBy), last.getRowId())) : (null);
+        }
+        int pageCount = (totalRowCount < 0) ? (-1) : ((totalRowCount + pageSize - 1) / pageSize);
+        return new ListPage<T>(rows, totalRowCount, pageCount, -1, hasPrev, hasNext, prevCursor, nextCursor);
+    }
+
+
+    /**
+     * Returns the rows on the page.
+     *
+     * @return List<T>  The rows.
+     */
+    public List<T> getList() {
+        return list;
+    }
+
+
+    /**
+     * Returns the total number of rows.
+     *
+     * @return int  The row count (-1 if not counted).
+     */
+    public int getTotalRowCount() {
+        return totalRowCount;
+    }
+
+
+    /**
+     * Returns the total number of pages.
+     *
+     * @return int  The page count.
+     */
+    public int getTotalPageCount() {
+        return totalPageCount;
+    }
+
+
+    /**
+     * Returns the page index (starts from 0), or -1 for a keyset page.
+     *
+     * @return int  The page index.
+     */
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+
+    /**
+     * Returns true if there is a previous page.
+     *
+     * @return boolean  True if there is a previous page.
+     */
+    public boolean hasPrev() {
+        return hasPrev;
+    }
+
+
+    /**
+     * Returns true if there is a next page.
+     *
+     * @return boolean  True if there is a next page.
+     */
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+
+    /**
+     * Returns the cursor for the previous page (null for an offset page or the first page).
+     *
+     * @return String  The cursor.
+     */
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+
+
+    /**
+     * Returns the cursor for the next page (null for an offset page or the last page).
+     *
+     * @return String  The cursor.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+
+    /**
+     * Returns true if this is a keyset page, which is navigated with cursors rather than page numbers.
+     *
+     * @return boolean  True if a keyset page.
+     */
+    public boolean isKeyset() {
+        return pageIndex < 0;
+    }
+
+
+}
@@ -0,0 +1,142 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A small in-process cache with a maximum size and a time-to-live.
+ * The least recently used entry is removed when the cache is full and entries expire after the time-to-live.
+ * All methods are synchronized, which is fine for the short critical sections used here.
+ *
+ * Date:        18/10/26
+ * Time:        04:35
+ *
+ * @version     1.0
+ */
+public class LruCache<K,V> {
+
+    private final int                               maxSize;
+    private final long                              ttlMillis;
+    private final LinkedHashMap<K,CacheEntry<V>>    map;
+
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize    Maximum number of entries.
+     * @param ttlMillis  Time-to-live of an entry in milliseconds.
+     */
+    public LruCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.map = new LinkedHashMap<K,CacheEntry<V>>(16, 0.75f, true) { // Access order, so the eldest is least recently used
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K,CacheEntry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cached value, or null if not cached or expired.
+     *
+     * @param key  The key.
+     * @return V   The value or null.
+     */
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+
+    /**
+     * Adds or replaces a value.
+     *
+     * @param key    The key.
+     * @param value  The value.
+     */
+    public synchronized void put(K key, V value) {
+        map.put(key, new CacheEntry<V>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+
+    /**
+     * Replaces a value that's cached and hasn't expired, keeping its expiry time. Nothing is added otherwise.
+     *
+     * @param key       The key.
+     * @param value     The new value.
+     * @return boolean  True if the value was replaced.
+     */
+    public synchronized boolean replace(K key, V value) {
+        CacheEntry<V> entry = map.get(key);
+        if (entry == null || entry.expires < System.currentTimeMillis()) {
+            return false;
+        }
+        map.put(key, new CacheEntry<V>(value, entry.expires));
+        return true;
+    }
+
+
+    /**
+     * Removes a value.
+     *
+     * @param key  The key.
+     * @return V   The removed value or null.
+     */
+    public synchronized V remove(K key) {
+        CacheEntry<V> entry = map.remove(key);
+        return (entry == null) ? (null) : (entry.value);
+    }
+
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear() {
+        map.clear();
+    }
+
+
+    /**
+     * Returns the number of entries (including any that have expired but not yet been removed).
+     *
+     * @return int  The number of entries.
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+
+    /**
+     * Returns the maximum number of entries.
+     *
+     * @return int  The maximum size.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+
+    /**
+     * A cached value and its expiry time.
+     */
+    private static class CacheEntry<V> {
+        final V     value;
+        final long  expires;
+
+        CacheEntry(V value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+
+}
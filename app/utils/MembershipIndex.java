@@ -0,0 +1,191 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory many-to-many membership index, e.g. users in groups, held as primitive id sets:
+ * a bitset of member ids per group and a sorted array of group ids per member.
+ * Finding a group's members is then a bitset copy rather than a join through the membership table.
+ * Member ids are used as bit positions, so they must be non-negative and fit in an int.
+ *
+ * Memberships can be added and removed at any time. Reads share a read lock and changes take a write lock;
+ * bitsets are copied before being returned.
+ *
+ * Date:        18/10/26
+ * Time:        04:55
+ *
+ * @version     1.0
+ */
+public class MembershipIndex {
+
+    private static final long[] NO_GROUPS = new long[0];
+
+    private final Map<Long,BitSet>  members = new HashMap<Long,BitSet>(); // Group id -> member ids
+    private final Map<Long,long[]>  groups  = new HashMap<Long,long[]>(); // Member id -> sorted group ids
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Adds a member to a group.
+     *
+     * @param memberId  The member id.
+     * @param groupId   The group id.
+     */
+    public void add(Long memberId, Long groupId) {
+        lock.writeLock().lock();
+        try {
+            long[] memberGroups = getGroups(memberId);
+            int index = Arrays.binarySearch(memberGroups, groupId);
+            if (index >= 0) {
+                return; // Already a member
+            }
+            index = -index - 1;
+            long[] added = new long[memberGroups.length + 1];
+            System.arraycopy(memberGroups, 0, added, 0, index);
+            added[index] = groupId;
+            System.arraycopy(memberGroups, index, added, index + 1, memberGroups.length - index);
+            groups.put(memberId, added);
+
+            BitSet ids = members.get(groupId);
+            if (ids == null) {
+                ids = new BitSet();
+                members.put(groupId, ids);
+            }
+            ids.set(memberId.intValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes a member from a group.
+     *
+     * @param memberId  The member id.
+     * @param groupId   The group id.
+     */
+    public void remove(Long memberId, Long groupId) {
+        lock.writeLock().lock();
+        try {
+            long[] memberGroups = getGroups(memberId);
+            int index = Arrays.binarySearch(memberGroups, groupId);
+            if (index < 0) {
+                return; // Not a member
+            }
+            if (memberGroups.length == 1) {
+                groups.remove(memberId);
+            } else {
+                long[] removed = new long[memberGroups.length - 1];
+                System.arraycopy(memberGroups, 0, removed, 0, index);
+                System.arraycopy(memberGroups, index + 1, removed, index, memberGroups.length - index - 1);
+                groups.put(memberId, removed);
+            }
+            clearMember(groupId, memberId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes a member from all its groups.
+     *
+     * @param memberId  The member id.
+     */
+    public void removeMember(Long memberId) {
+        lock.writeLock().lock();
+        try {
+            long[] memberGroups = groups.remove(memberId);
+            if (memberGroups != null) {
+                for (long groupId : memberGroups) {
+                    clearMember(groupId, memberId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes all memberships.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            members.clear();
+            groups.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the members of a group.
+     *
+     * @param groupId  The group id.
+     * @return BitSet  A copy of the member ids (empty if none).
+     */
+    public BitSet getMembers(Long groupId) {
+        lock.readLock().lock();
+        try {
+            BitSet ids = members.get(groupId);
+            return (ids == null) ? (new BitSet()) : ((BitSet) ids.clone());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the groups a member belongs to.
+     *
+     * @param memberId  The member id.
+     * @return long[]   A copy of the group ids, in ascending order (empty if none).
+     */
+    public long[] getMemberGroups(Long memberId) {
+        lock.readLock().lock();
+        try {
+            return getGroups(memberId).clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns a member's group ids. The caller must hold a lock.
+     *
+     * @param memberId  The member id.
+     * @return long[]   The group ids (not to be changed).
+     */
+    private long[] getGroups(Long memberId) {
+        long[] memberGroups = groups.get(memberId);
+        return (memberGroups == null) ? (NO_GROUPS) : (memberGroups);
+    }
+
+
+    /**
+     * Clears a member's bit in a group's bitset. The caller must hold the write lock.
+     *
+     * @param groupId   The group id.
+     * @param memberId  The member id.
+     */
+    private void clearMember(Long groupId, Long memberId) {
+        BitSet ids = members.get(groupId);
+        if (ids != null) {
+            ids.clear(memberId.intValue());
+            if (ids.isEmpty()) {
+                members.remove(groupId);
+            }
+        }
+    }
+
+
+}
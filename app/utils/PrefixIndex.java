@@ -0,0 +1,193 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory prefix index for type-ahead: each item (identified by a Long id) has one or more keys, e.g. first name,
+ * last name and full name, held lower-case in a sorted map. The items whose keys start with a prefix are a contiguous
+ * range of the map, so the first k matches are found without looking at any other keys.
+ *
+ * Items can be added, replaced and removed at any time. Searches share a read lock and changes take a write lock.
+ *
+ * Date:        18/10/26
+ * Time:        04:47
+ *
+ * @version     1.0
+ */
+public class PrefixIndex<V> {
+
+    private final TreeMap<String,Set<Long>> keys  = new TreeMap<String,Set<Long>>(); // Lower-case key -> ids
+    private final Map<Long,Item<V>>         items = new HashMap<Long,Item<V>>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Adds an item, replacing any with the same id.
+     *
+     * @param id     The id.
+     * @param value  The value returned by searches.
+     * @param keys   The keys the item can be found by (nulls and empty keys are ignored).
+     */
+    public void put(Long id, V value, String... keys) {
+        Set<String> lowerKeys = new LinkedHashSet<String>();
+        for (String key : keys) {
+            if (key != null && !key.trim().isEmpty()) {
+                lowerKeys.add(normalise(key));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeItem(id);
+            items.put(id, new Item<V>(value, lowerKeys));
+            for (String key : lowerKeys) {
+                Set<Long> ids = this.keys.get(key);
+                if (ids == null) {
+                    ids = new HashSet<Long>();
+                    this.keys.put(key, ids);
+                }
+                ids.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes an item.
+     *
+     * @param id  The id.
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeItem(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes all items.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            keys.clear();
+            items.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of items indexed.
+     *
+     * @return int  The number of items.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return items.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds the first items, in key order, with a key starting with a prefix (ignoring case).
+     *
+     * @param prefix    The prefix.
+     * @param limit     The maximum number of items to return.
+     * @return List<V>  The items' values (empty if the prefix is empty).
+     */
+    public List<V> search(String prefix, int limit) {
+        List<V> result = new ArrayList<V>();
+        String lower = normalise(prefix);
+        if (lower.isEmpty() || limit <= 0) {
+            return result;
+        }
+
+        Set<Long> found = new HashSet<Long>(); // An item may match on more than one key
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String,Set<Long>> entry : keys.tailMap(lower, true).entrySet()) {
+                if (!entry.getKey().startsWith(lower)) {
+                    break; // Past the range of keys with the prefix
+                }
+                for (Long id : entry.getValue()) {
+                    if (found.add(id)) {
+                        result.add(items.get(id).value);
+                        if (result.size() == limit) {
+                            return result;
+                        }
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Lower-cases and trims a key or prefix.
+     *
+     * @param text     The text (may be null).
+     * @return String  The normalised text.
+     */
+    private static String normalise(String text) {
+        return (text == null) ? ("") : (text.trim().toLowerCase(Locale.ENGLISH));
+    }
+
+
+    /**
+     * Removes an item's keys. The caller must hold the write lock.
+     *
+     * @param id  The id.
+     */
+    private void removeItem(Long id) {
+        Item<V> item = items.remove(id);
+        if (item == null) {
+            return;
+        }
+        for (String key : item.keys) {
+            Set<Long> ids = keys.get(key);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                keys.remove(key);
+            }
+        }
+    }
+
+
+    /**
+     * An item's value and keys.
+     */
+    private static class Item<V> {
+        final V             value;
+        final Set<String>   keys;
+
+        Item(V value, Set<String> keys) {
+            this.value = value;
+            this.keys = keys;
+        }
+    }
+
+
+}
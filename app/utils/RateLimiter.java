@@ -0,0 +1,231 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A token bucket rate limiter with one bucket per key, e.g. per username or per client address.
+ * Each bucket holds up to "capacity" tokens and refills at a steady rate; an attempt takes one token.
+ * Bucket state is immutable and replaced with compare-and-set, so concurrent attempts on a bucket never block.
+ * The buckets are striped by key hash and only finding a bucket locks its stripe, so attempts on different stripes
+ * don't wait for each other.
+ *
+ * Memory is bounded: each stripe holds an equal share of the maximum number of keys, in access order, and when
+ * a stripe is full its least recently used bucket is removed to make room, so every key always has a bucket of its
+ * own. Eviction is therefore least recently used per stripe, which approximates it across all keys.
+ * A key whose bucket was removed starts again with a full bucket.
+ *
+ * Date:        18/10/26
+ * Time:        04:38
+ *
+ * @version     1.0
+ */
+public class RateLimiter {
+
+    // Constants
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final double    capacity;
+    private final double    refillPerMilli;
+
+    private final Stripe[]  stripes;
+
+
+    /**
+     * Constructor, with DEFAULT_STRIPES stripes.
+     *
+     * @param capacity        Maximum number of attempts in a burst.
+     * @param refillPerMinute Number of attempts allowed per minute once the burst is used.
+     * @param maxKeys         Maximum number of buckets held in memory.
+     */
+    public RateLimiter(int capacity, int refillPerMinute, int maxKeys) {
+        this(capacity, refillPerMinute, maxKeys, DEFAULT_STRIPES);
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param capacity        Maximum number of attempts in a burst.
+     * @param refillPerMinute Number of attempts allowed per minute once the burst is used.
+     * @param maxKeys         Maximum number of buckets held in memory.
+     * @param stripes         Number of stripes (at most maxKeys, so each stripe holds at least one bucket).
+     */
+    public RateLimiter(int capacity, int refillPerMinute, int maxKeys, int stripes) {
+        this.capacity = capacity;
+        this.refillPerMilli = refillPerMinute / 60000.0;
+        int count = Math.max(1, Math.min(stripes, maxKeys));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(maxKeys / count);
+        }
+    }
+
+
+    /**
+     * Takes a token from the key's bucket if one is available.
+     *
+     * @param key       The key, e.g. a username (null keys are treated as an empty string).
+     * @return boolean  True if the attempt is allowed, false if it should be rejected.
+     */
+    public boolean tryAcquire(String key) {
+        long now = System.currentTimeMillis();
+        AtomicReference<State> bucket = getBucket((key == null) ? ("") : (key), now);
+        while (true) {
+            State current = bucket.get();
+            double tokens = getTokens(current, now);
+            if (tokens < 1.0) {
+                return false;
+            }
+            State next = new State(tokens - 1.0, Math.max(now, current.time));
+            if (bucket.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Returns true if the key's bucket has a token, without taking it or adding a bucket.
+     *
+     * @param key       The key (null keys are treated as an empty string).
+     * @return boolean  True if an attempt would be allowed now.
+     */
+    public boolean isAllowed(String key) {
+        AtomicReference<State> bucket = findBucket((key == null) ? ("") : (key));
+        return (bucket == null) || (getTokens(bucket.get(), System.currentTimeMillis()) >= 1.0);
+    }
+
+
+    /**
+     * Gives a token back to the key's bucket, e.g. when an attempt turns out to be legitimate.
+     *
+     * @param key  The key (null keys are treated as an empty string).
+     */
+    public void release(String key) {
+        AtomicReference<State> bucket = findBucket((key == null) ? ("") : (key));
+        if (bucket == null) {
+            return; // Evicted, so it's full again anyway
+        }
+        while (true) {
+            State current = bucket.get();
+            State next = new State(Math.min(capacity, current.tokens + 1.0), current.time);
+            if (bucket.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Returns the number of buckets held in memory.
+     *
+     * @return int  The number of buckets.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+
+    /**
+     * Gets the key's bucket, creating it (and removing its stripe's least recently used bucket if full) if there
+     * isn't one.
+     *
+     * @param key   The key.
+     * @param now   The current time in milliseconds.
+     * @return AtomicReference<State>  The bucket.
+     */
+    private AtomicReference<State> getBucket(String key, long now) {
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            AtomicReference<State> bucket = stripe.get(key);
+            if (bucket == null) {
+                bucket = new AtomicReference<State>(new State(capacity, now));
+                stripe.put(key, bucket);
+            }
+            return bucket;
+        }
+    }
+
+
+    /**
+     * Gets the key's bucket if it has one.
+     *
+     * @param key   The key.
+     * @return AtomicReference<State>  The bucket, or null.
+     */
+    private AtomicReference<State> findBucket(String key) {
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
+    }
+
+
+    /**
+     * Returns the stripe that holds a key's bucket.
+     *
+     * @param key       The key.
+     * @return Stripe   The stripe.
+     */
+    private Stripe getStripe(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // Spread the high bits, as similar keys (e.g. addresses) differ at the end
+        return stripes[(hash & 0x7fffffff) % stripes.length];
+    }
+
+
+    /**
+     * Returns the tokens in a bucket now, after refilling.
+     *
+     * @param state    The bucket's state.
+     * @param now      The current time in milliseconds.
+     * @return double  The tokens.
+     */
+    private double getTokens(State state, long now) {
+        long elapsed = Math.max(0L, now - state.time);
+        return Math.min(capacity, state.tokens + elapsed * refillPerMilli);
+    }
+
+
+    /**
+     * A share of the buckets, in access order, that removes its least recently used bucket when it's full.
+     * Guarded by its own lock.
+     */
+    private static class Stripe extends LinkedHashMap<String,AtomicReference<State>> {
+        private final int   maxKeys;
+
+        Stripe(int maxKeys) {
+            super(16, 0.75f, true); // Access order
+            this.maxKeys = maxKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,AtomicReference<State>> eldest) {
+            return size() > maxKeys;
+        }
+    }
+
+
+    /**
+     * Immutable bucket state: the tokens left and when they were last counted.
+     */
+    private static class State {
+        final double    tokens;
+        final long      time;
+
+        State(double tokens, long time) {
+            this.tokens = tokens;
+            this.time = time;
+        }
+    }
+
+
+}
@@ -0,0 +1,243 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory ordering of ids by a text value (e.g. analysts by primary desk name), for sorted paging without
+ * an ORDER BY. Ids are ordered by value, ignoring case, with nulls (and empty values, which cursors can't tell
+ * apart from null) first, then by id, the same as ordering by (value, id) in the DB. Descending is the same ordering
+ * read backwards.
+ *
+ * The ordering is kept in a sorted set, so an id can be added, moved or removed in log time. Pages are sliced from
+ * an array of the ids in order, which is rebuilt from the set on the first read after a change. Keyset pages
+ * (see seek) binary search the array for the cursor's position.
+ * Reads share a read lock and changes take a write lock.
+ *
+ * Date:        18/10/26
+ * Time:        04:54
+ *
+ * @version     1.0
+ */
+public class SortedIdIndex {
+
+    // Constants
+    private static final Comparator<Key> ORDER = new KeyComparator();
+
+    private final TreeSet<Key>      sorted  = new TreeSet<Key>(ORDER);
+    private final Map<Long,Key>     keys    = new HashMap<Long,Key>(); // Id -> key in the sorted set
+    private volatile Key[]          ordered;                           // Keys in order, null after a change
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Sets an id's value, moving it from its previous position.
+     *
+     * @param id     The id.
+     * @param value  The value (may be null).
+     */
+    public void put(Long id, String value) {
+        lock.writeLock().lock();
+        try {
+            Key old = keys.remove(id);
+            if (old != null) {
+                sorted.remove(old);
+            }
+            Key key = new Key(value, id);
+            keys.put(id, key);
+            sorted.add(key);
+            ordered = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes an id.
+     *
+     * @param id  The id.
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            Key old = keys.remove(id);
+            if (old != null) {
+                sorted.remove(old);
+                ordered = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes all ids.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            sorted.clear();
+            keys.clear();
+            ordered = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of ids.
+     *
+     * @return int  The number of ids.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns a page of the ordering.
+     *
+     * @param selection    Only include these ids (null to include all).
+     * @param ascending    True for ascending order, false for descending.
+     * @param offset       The number of (selected) ids to skip.
+     * @param limit        The maximum number of ids to return.
+     * @return List<Long>  The ids, in order.
+     */
+    public List<Long> slice(BitSet selection, boolean ascending, int offset, int limit) {
+        Key[] ids = getOrdered();
+        List<Long> result = new ArrayList<Long>(Math.max(0, Math.min(limit, ids.length - offset)));
+        if (selection == null) { // Every id, so the page is a range of the array
+            for (int i = offset; i < ids.length && result.size() < limit; i++) {
+                result.add((ascending) ? (ids[i].id) : (ids[ids.length - 1 - i].id));
+            }
+            return result;
+        }
+
+        int skipped = 0;
+        for (int i = 0; i < ids.length && result.size() < limit; i++) {
+            long id = (ascending) ? (ids[i].id) : (ids[ids.length - 1 - i].id);
+            if (selection.get((int) id)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the ids next to a position in the ordering, for a keyset page (see KeysetCursor). The position is
+     * found by binary search and the ids are read from there, so every page costs the same as the first.
+     * The ids are in scan order: following the position in the sort order or, before it, preceding it nearest first.
+     *
+     * @param selection    Only include these ids (null to include all).
+     * @param ascending    True for ascending order, false for descending.
+     * @param before       True for the ids before the position, false for the ids after it.
+     * @param value        The value at the position (may be null).
+     * @param id           The id at the position, or null for the start of the ordering.
+     * @param limit        The maximum number of ids to return.
+     * @return List<Long>  The ids, in scan order.
+     */
+    public List<Long> seek(BitSet selection, boolean ascending, boolean before, String value, Long id, int limit) {
+        Key[] ids = getOrdered();
+        boolean forwards = (ascending != before); // Through the array
+        int i;
+        if (id == null) {
+            i = (forwards) ? (0) : (ids.length - 1);
+        } else {
+            int found = Arrays.binarySearch(ids, new Key(value, id), ORDER);
+            if (found >= 0) { // Start next to the position
+                i = (forwards) ? (found + 1) : (found - 1);
+            } else { // The id has moved or gone, so start where it would be
+                int insertion = -(found + 1);
+                i = (forwards) ? (insertion) : (insertion - 1);
+            }
+        }
+
+        List<Long> result = new ArrayList<Long>(Math.max(0, limit));
+        for (; i >= 0 && i < ids.length && result.size() < limit; i += (forwards) ? (1) : (-1)) {
+            long next = ids[i].id;
+            if (selection == null || selection.get((int) next)) {
+                result.add(next);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * Returns the keys in order, rebuilding the array if the ordering has changed.
+     *
+     * @return Key[]  The keys (not to be changed).
+     */
+    private Key[] getOrdered() {
+        Key[] ids = ordered;
+        if (ids != null) {
+            return ids;
+        }
+        lock.readLock().lock();
+        try {
+            ids = sorted.toArray(new Key[sorted.size()]);
+            ordered = ids; // Changes clear this under the write lock, so it can't overwrite a newer change
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * An id and its value.
+     */
+    private static class Key {
+        final String    value;
+        final long      id;
+
+        Key(String value, long id) {
+            this.value = (value == null || value.isEmpty()) ? (null) : (value);
+            this.id = id;
+        }
+    }
+
+
+    /**
+     * Orders keys by value ignoring case (nulls first), then by id.
+     */
+    private static class KeyComparator implements Comparator<Key> {
+        public int compare(Key a, Key b) {
+            if (a.value != b.value) {
+                if (a.value == null) {
+                    return -1;
+                } else if (b.value == null) {
+                    return 1;
+                }
+                int result = String.CASE_INSENSITIVE_ORDER.compare(a.value, b.value);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return Long.compare(a.id, b.id);
+        }
+    }
+
+
+}
@@ -0,0 +1,237 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory inverted index for full-text search over documents identified by a Long id.
+ * Text is split into lower-case words (letters and digits); each word has a posting list of the documents
+ * containing it and how often. A search returns the documents containing every word of the query,
+ * ranked by BM25 relevance (rarer words and shorter documents score higher).
+ *
+ * Documents can be added, replaced and removed at any time. Searches share a read lock and changes take a write lock.
+ *
+ * Date:        18/10/26
+ * Time:        04:45
+ *
+ * @version     1.0
+ */
+public class TextIndex {
+
+    // BM25 parameters: term frequency saturation and document length normalisation
+    private static final double K1 = 1.2;
+    private static final double B  = 0.75;
+
+    private static final int            MIN_WORD_LENGTH = 2;
+    private static final Set<String>    STOP_WORDS      = new HashSet<String>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "have", "he", "her", "his",
+            "in", "is", "it", "its", "of", "on", "or", "she", "that", "the", "their", "to", "was", "were", "with"));
+
+    private final Map<String,Map<Long,Integer>> postings  = new HashMap<String,Map<Long,Integer>>(); // Word -> id, count
+    private final Map<Long,Map<String,Integer>> documents = new HashMap<Long,Map<String,Integer>>(); // Id -> word, count
+    private final Map<Long,Integer>             lengths   = new HashMap<Long,Integer>();             // Id -> no. words
+    private long                                totalLength;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Adds a document, replacing any with the same id.
+     *
+     * @param id     The document id.
+     * @param texts  The document's text fields (nulls are ignored).
+     */
+    public void put(Long id, String... texts) {
+        // Count the words outside the lock
+        Map<String,Integer> counts = new HashMap<String,Integer>();
+        int length = 0;
+        for (String text : texts) {
+            for (String word : tokenize(text)) {
+                Integer count = counts.get(word);
+                counts.put(word, (count == null) ? (1) : (count + 1));
+                length++;
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+            if (length > 0) {
+                documents.put(id, counts);
+                lengths.put(id, length);
+                totalLength += length;
+                for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+                    Map<Long,Integer> posting = postings.get(entry.getKey());
+                    if (posting == null) {
+                        posting = new HashMap<Long,Integer>();
+                        postings.put(entry.getKey(), posting);
+                    }
+                    posting.put(id, entry.getValue());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes a document.
+     *
+     * @param id  The document id.
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes all documents.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            lengths.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of documents indexed.
+     *
+     * @return int  The number of documents.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds the documents containing every word of the query, most relevant first.
+     *
+     * @param query        The query text.
+     * @return List<Long>  The ids of the matching documents (empty if the query has no words).
+     */
+    public List<Long> search(String query) {
+        List<String> words = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+        if (words.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Map<Long,Double> scores = new HashMap<Long,Double>();
+        lock.readLock().lock();
+        try {
+            // Start from the shortest posting list, so the candidates are as few as possible
+            List<Map<Long,Integer>> lists = new ArrayList<Map<Long,Integer>>();
+            for (String word : words) {
+                Map<Long,Integer> posting = postings.get(word);
+                if (posting == null) {
+                    return Collections.emptyList();
+                }
+                lists.add(posting);
+            }
+            Collections.sort(lists, new Comparator<Map<Long,Integer>>() {
+                public int compare(Map<Long,Integer> a, Map<Long,Integer> b) {
+                    return Integer.compare(a.size(), b.size());
+                }
+            });
+
+            int numDocs = documents.size();
+            double avgLength = (double) totalLength / numDocs;
+            candidates:
+            for (Long id : lists.get(0).keySet()) {
+                double score = 0.0;
+                double norm = K1 * (1.0 - B + B * lengths.get(id) / avgLength);
+                for (Map<Long,Integer> posting : lists) {
+                    Integer tf = posting.get(id);
+                    if (tf == null) {
+                        continue candidates; // Doesn't contain every word
+                    }
+                    double idf = Math.log(1.0 + (numDocs - posting.size() + 0.5) / (posting.size() + 0.5));
+                    score += idf * tf * (K1 + 1.0) / (tf + norm);
+                }
+                scores.put(id, score);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Highest score first, then lowest id so the order is stable
+        List<Long> ids = new ArrayList<Long>(scores.keySet());
+        Collections.sort(ids, new Comparator<Long>() {
+            public int compare(Long a, Long b) {
+                int result = Double.compare(scores.get(b), scores.get(a));
+                return (result != 0) ? (result) : (a.compareTo(b));
+            }
+        });
+        return ids;
+    }
+
+
+    /**
+     * Splits text into lower-case words of letters and digits, leaving out stop words and single characters.
+     *
+     * @param text           The text (may be null).
+     * @return List<String>  The words in order.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<String>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : text.toLowerCase(Locale.ENGLISH).split("[^\\p{L}\\p{Nd}]+")) {
+            if (word.length() >= MIN_WORD_LENGTH && !STOP_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+
+    /**
+     * Removes a document's postings. The caller must hold the write lock.
+     *
+     * @param id  The document id.
+     */
+    private void removeDocument(Long id) {
+        Map<String,Integer> counts = documents.remove(id);
+        if (counts == null) {
+            return;
+        }
+        totalLength -= lengths.remove(id);
+        for (String word : counts.keySet()) {
+            Map<Long,Integer> posting = postings.get(word);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(word);
+            }
+        }
+    }
+
+
+}
@@ -0,0 +1,208 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory trigram index for case-insensitive substring search over short texts (e.g. names),
+ * identified by a Long id. Each text is split into its overlapping three-character sequences, and each trigram
+ * has a posting list of the ids whose text contains it. A substring query is resolved by intersecting the posting
+ * lists of its trigrams, smallest first, then checking the few candidates left really contain the substring.
+ * Queries shorter than three characters are checked against every text, which is still in memory.
+ *
+ * Texts can be added, replaced and removed at any time. Searches share a read lock and changes take a write lock.
+ *
+ * Date:        18/10/26
+ * Time:        04:47
+ *
+ * @version     1.0
+ */
+public class TrigramIndex {
+
+    private final Map<String,Set<Long>> postings = new HashMap<String,Set<Long>>(); // Trigram -> ids
+    private final Map<Long,String>      texts    = new HashMap<Long,String>();      // Id -> lower-case text
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+
+    /**
+     * Adds a text, replacing any with the same id.
+     *
+     * @param id    The id.
+     * @param text  The text (null removes the id).
+     */
+    public void put(Long id, String text) {
+        lock.writeLock().lock();
+        try {
+            removeText(id);
+            if (text != null) {
+                String lower = normalise(text);
+                texts.put(id, lower);
+                for (String trigram : trigrams(lower)) {
+                    Set<Long> posting = postings.get(trigram);
+                    if (posting == null) {
+                        posting = new HashSet<Long>();
+                        postings.put(trigram, posting);
+                    }
+                    posting.add(id);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes a text.
+     *
+     * @param id  The id.
+     */
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeText(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes all texts.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            texts.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the number of texts indexed.
+     *
+     * @return int  The number of texts.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return texts.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds the texts containing a substring, ignoring case.
+     *
+     * @param substring   The substring.
+     * @return Set<Long>  The ids of the matching texts (every id if the substring is empty).
+     */
+    public Set<Long> search(String substring) {
+        String lower = normalise(substring);
+        Set<Long> result = new HashSet<Long>();
+        lock.readLock().lock();
+        try {
+            if (lower.length() < 3) { // No trigrams, so check every text
+                for (Map.Entry<Long,String> entry : texts.entrySet()) {
+                    if (entry.getValue().contains(lower)) {
+                        result.add(entry.getKey());
+                    }
+                }
+                return result;
+            }
+
+            // Intersect the posting lists, smallest first
+            List<Set<Long>> lists = new ArrayList<Set<Long>>();
+            for (String trigram : trigrams(lower)) {
+                Set<Long> posting = postings.get(trigram);
+                if (posting == null) {
+                    return result;
+                }
+                lists.add(posting);
+            }
+            Collections.sort(lists, new Comparator<Set<Long>>() {
+                public int compare(Set<Long> a, Set<Long> b) {
+                    return Integer.compare(a.size(), b.size());
+                }
+            });
+            candidates:
+            for (Long id : lists.get(0)) {
+                for (int i = 1; i < lists.size(); i++) {
+                    if (!lists.get(i).contains(id)) {
+                        continue candidates;
+                    }
+                }
+                // Having every trigram doesn't guarantee they're adjacent, so check the text itself
+                if (texts.get(id).contains(lower)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Returns the distinct trigrams of a text.
+     *
+     * @param text          The (lower-case) text.
+     * @return Set<String>  The trigrams.
+     */
+    private static Set<String> trigrams(String text) {
+        Set<String> trigrams = new LinkedHashSet<String>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+
+    /**
+     * Lower-cases text for indexing and searching.
+     *
+     * @param text     The text (may be null).
+     * @return String  The lower-case text.
+     */
+    private static String normalise(String text) {
+        return (text == null) ? ("") : (text.toLowerCase(Locale.ENGLISH));
+    }
+
+
+    /**
+     * Removes a text's postings. The caller must hold the write lock.
+     *
+     * @param id  The id.
+     */
+    private void removeText(Long id) {
+        String text = texts.remove(id);
+        if (text == null) {
+            return;
+        }
+        for (String trigram : trigrams(text)) {
+            Set<Long> posting = postings.get(trigram);
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+
+}
@@ -1,6 +1,7 @@
 package utils;
 
 import org.joda.time.DateTime;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
@@ -38,6 +39,8 @@ public class Utils {
 
     public static final String DATETIME_FORMAT = "dd-MMM-yyyy HH:mm";
 
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
 
     /**
      * Logs caught exceptions.
@@ -232,13 +235,47 @@ public class Utils {
         md.update(input.getBytes());
         byte byteData[] = md.digest();
 
-        // Convert the bytes to hex format method 1
-        StringBuffer sb = new StringBuffer();
-        for (int i = 0; i < byteData.length; i++) {
-            sb.append(Integer.toString((byteData[i] & 0xff) + 0x100, 16).substring(1));
+        return toHex(byteData);
+
+    }
+
+
+    /**
+     * Converts bytes to a lower-case hex string.
+     *
+     * @param  bytes   The bytes.
+     * @return String  The hex string.
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(Integer.toString((bytes[i] & 0xff) + 0x100, 16).substring(1));
         }
         return sb.toString();
+    }
+
 
+    /**
+     * Converts a hex string to bytes.
+     *
+     * @param  hex     The hex string.
+     * @return byte[]  The bytes.
+     * @throws IllegalArgumentException  If the string isn't valid hex.
+     */
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Hex string has an odd length");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low  = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("Invalid hex character");
+            }
+            bytes[i] = (byte) ((high << 4) + low);
+        }
+        return bytes;
     }
 
 
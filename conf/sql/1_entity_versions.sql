@@ -0,0 +1,12 @@
+-- Adds the version columns behind the JSON API's ETags (see models.EntityVersions).
+-- Run by hand (e.g. mysql sno2 < conf/sql/1_entity_versions.sql) before deploying the code that reads them.
+-- Existing rows start at version 1; Ebean neither inserts nor updates the columns, so the default is what new rows get.
+
+alter table analyst add column version bigint not null default 1;
+alter table note add column version bigint not null default 1;
+alter table user add column version bigint not null default 1;
+
+-- To undo:
+-- alter table analyst drop column version;
+-- alter table note drop column version;
+-- alter table user drop column version;
@@ -13,6 +13,7 @@ object ApplicationBuild extends Build {
         "org.reflections" % "reflections" % "0.9.8",
         javaCore, javaJdbc, javaEbean,
         "com.amazonaws" % "aws-java-sdk" % "1.3.11",
+        "com.fasterxml.jackson.dataformat" % "jackson-dataformat-smile" % "2.2.2", // Jackson version of Play 2.2
         filters
     )
 
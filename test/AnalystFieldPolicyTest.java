@@ -0,0 +1,98 @@
+import models.Analyst;
+import models.AnalystFieldPolicy;
+import models.AnalystFieldPolicy.Field;
+import models.AnalystFieldPolicy.Tier;
+import models.Rank;
+import models.Status;
+import models.User;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the per-tier analyst field masks.
+ *
+ * Date: 18/10/26
+ * Time: 04:41
+ *
+ * @version     1.0
+ */
+public class AnalystFieldPolicyTest {
+
+
+    /**
+     * @verifies That roles map to the expected tiers.
+     */
+    @Test
+    public void testTiers() {
+        assertEquals(Tier.ADMIN_OR_MANAGER, Tier.of(User.ROLE_ADMIN));
+        assertEquals(Tier.ADMIN_OR_MANAGER, Tier.of(User.ROLE_MANAGER | User.ROLE_STAFF));
+        assertEquals(Tier.STAFF, Tier.of(User.ROLE_STAFF));
+        assertEquals(Tier.OTHER, Tier.of(0));
+    }
+
+
+    /**
+     * @verifies That restricted fields are only visible and editable by the right tiers.
+     */
+    @Test
+    public void testMasks() {
+        assertTrue(AnalystFieldPolicy.isVisible(Tier.ADMIN_OR_MANAGER, Field.PHONE));
+        assertFalse(AnalystFieldPolicy.isVisible(Tier.STAFF, Field.PHONE));
+        assertTrue(AnalystFieldPolicy.isVisible(Tier.STAFF, Field.ADDRESS1));
+        assertFalse(AnalystFieldPolicy.isVisible(Tier.OTHER, Field.PAYPAL_ACCOUNT_EMAIL));
+        assertTrue(AnalystFieldPolicy.isVisible(Tier.OTHER, Field.RANK));
+        assertFalse(AnalystFieldPolicy.isEditable(Tier.OTHER, Field.RANK));
+        assertTrue(AnalystFieldPolicy.isEditable(Tier.STAFF, Field.RANK));
+        assertTrue(AnalystFieldPolicy.isEditable(Tier.OTHER, Field.LASTNAME));
+    }
+
+
+    /**
+     * @verifies That updating as a restricted tier restores the fields it can't edit and keeps the ones it can.
+     */
+    @Test
+    public void testMerge() {
+        Analyst existing = getAnalyst("stored", "Analyst");
+        Analyst newAnalyst = getAnalyst("sent", "Senior Analyst");
+
+        AnalystFieldPolicy.merge(Tier.OTHER, existing, newAnalyst);
+        assertEquals("stored", newAnalyst.phone);       // Admins and managers only
+        assertEquals("stored", newAnalyst.address1);    // Staff and above
+        assertSame(existing.rank, newAnalyst.rank);     // Staff and above
+        assertEquals("sent", newAnalyst.lastname);      // Everyone
+
+        newAnalyst = getAnalyst("sent", "Senior Analyst");
+        AnalystFieldPolicy.merge(Tier.STAFF, existing, newAnalyst);
+        assertEquals("stored", newAnalyst.phone);
+        assertEquals("sent", newAnalyst.address1);
+        assertEquals("Senior Analyst", newAnalyst.rank.name);
+
+        newAnalyst = getAnalyst("sent", "Senior Analyst");
+        AnalystFieldPolicy.merge(Tier.ADMIN_OR_MANAGER, existing, newAnalyst);
+        assertEquals("sent", newAnalyst.phone);
+    }
+
+
+    /**
+     * Returns an analyst with its text fields set to a value.
+     *
+     * @param value     The value of the text fields.
+     * @param rankName  The name of the analyst's rank.
+     * @return Analyst  The analyst.
+     */
+    private static Analyst getAnalyst(String value, String rankName) {
+        Analyst analyst = new Analyst();
+        analyst.lastname = value;
+        analyst.phone = value;
+        analyst.address1 = value;
+        analyst.skype = value;
+        analyst.rank = new Rank();
+        analyst.rank.name = rankName;
+        analyst.status = new Status();
+        analyst.status.statusName = "Active";
+        return analyst;
+    }
+
+
+}
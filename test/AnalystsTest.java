@@ -1,3 +1,7 @@
+import models.Analyst;
+import models.AnalystIndex;
+import models.Note;
+import models.QueryCounter;
 import models.User;
 import org.junit.After;
 import org.junit.Before;
@@ -5,6 +9,9 @@ import org.junit.Test;
 import play.libs.WS;
 import play.mvc.Result;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 import static org.fest.assertions.Assertions.assertThat;
 import static play.test.Helpers.*;
@@ -64,6 +71,74 @@ public class AnalystsTest {
     }
 
 
+    /**
+     * @verifies That a page of analyst JSON with their desks and notes runs no more DB queries for 2N analysts than
+     * for N, i.e. the relationships are loaded in batches rather than per analyst.
+     */
+    @Test
+    public void testQueryCountPerPage() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                List<Analyst> created = new ArrayList<Analyst>();
+                List<Note> notes = new ArrayList<Note>();
+                try {
+                    int few = getQueryCount("Querycountfew", 5, created, notes);
+                    int many = getQueryCount("Querycountmany", 10, created, notes);
+                    assertTrue("Queries grew from " + few + " to " + many, many <= few);
+                } finally {
+                    for (Note note : notes) {
+                        note.delete();
+                    }
+                    for (Analyst analyst : created) {
+                        analyst.delete();
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Adds analysts with a note each, all with the same last name, and gets them as a page of JSON.
+     *
+     * @param lastname  The analysts' last name, which no other analyst has.
+     * @param count     The number of analysts to add.
+     * @param created   The analysts added, to be deleted afterwards.
+     * @param notes     The notes added, to be deleted afterwards.
+     * @return int      The number of DB queries run for the page.
+     */
+    private static int getQueryCount(String lastname, int count, List<Analyst> created, List<Note> notes) {
+        User user = User.find.byId(1L);
+        Analyst template = Analyst.find.byId(3L); // For a valid status, rank and primary desk
+        for (int i = 0; i < count; i++) {
+            Analyst analyst = new Analyst();
+            analyst.firstname = "Test" + i;
+            analyst.lastname = lastname;
+            analyst.status = template.status;
+            analyst.rank = template.rank;
+            analyst.primaryDesk = template.primaryDesk;
+            analyst.save();
+            AnalystIndex.refresh(analyst.analystId);
+            created.add(analyst);
+
+            Note note = new Note();
+            note.title = "Test";
+            note.content = "Query count test";
+            note.analyst = analyst;
+            note.user = user;
+            note.updatedBy = user;
+            note.save();
+            notes.add(note);
+        }
+        Result res = route(fakeRequest("GET", "/analysts?t=" + lastname + "&limit=100&include=desks,noteList")
+                           .withHeader("Accept", "application/json")
+                           .withSession("username", "savbalac"));
+        assertEquals(OK, status(res));
+        assertEquals(count, contentAsString(res).split("Query count test", -1).length - 1);
+        return Integer.parseInt(header(QueryCounter.HEADER, res));
+    }
+
+
     /**
      * Stops the application.
      */
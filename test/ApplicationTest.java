@@ -4,6 +4,10 @@ import play.libs.WS;
 import play.mvc.*;
 import play.test.*;
 import play.libs.F.*;
+import utils.JsonEncoding;
+
+import java.io.IOException;
+
 import static org.junit.Assert.*;
 import static org.fest.assertions.Assertions.assertThat;
 import static play.test.Helpers.*;
@@ -70,6 +74,31 @@ public class ApplicationTest {
     }
 
 
+    /**
+     * @verifies That a client that only accepts Smile gets its errors as Smile, from an action and from Global.
+     */
+    @Test
+    public void testSmileErrors() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                Result res = route(fakeRequest(POST, "/token").withHeader(ACCEPT, JsonEncoding.SMILE));
+                assertEquals(OK, status(res));
+                assertEquals(JsonEncoding.SMILE, contentType(res));
+                try {
+                    assertEquals("Invalid username or password.",
+                                 JsonEncoding.fromSmile(contentAsBytes(res)).get("error").asText());
+                } catch (IOException e) {
+                    fail("Not Smile: " + e);
+                }
+
+                res = route(fakeRequest(GET, "/analysts/x").withHeader(ACCEPT, JsonEncoding.SMILE));
+                assertEquals(BAD_REQUEST, status(res));
+                assertEquals(JsonEncoding.SMILE, contentType(res));
+            }
+        });
+    }
+
+
     /**
      * @verifies That the real HTTP stack is running and that the login page is displayed.
      */
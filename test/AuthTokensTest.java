@@ -0,0 +1,63 @@
+import org.junit.*;
+import utils.AuthTokens;
+
+import static org.junit.Assert.*;
+import static play.test.Helpers.*;
+
+/**
+ * Tests the signed bearer tokens used by the JSON API.
+ *
+ * Date: 18/10/26
+ * Time: 04:36
+ *
+ * @version     1.0
+ */
+public class AuthTokensTest {
+
+
+    /**
+     * @verifies That an issued token verifies to the username until it is revoked.
+     */
+    @Test
+    public void testIssueVerifyRevoke() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                String token = AuthTokens.issue("savbalac");
+                assertEquals("savbalac", AuthTokens.verify(token));
+                assertTrue(AuthTokens.revoke(token));
+                assertNull(AuthTokens.verify(token));
+            }
+        });
+    }
+
+
+    /**
+     * @verifies That a token with a changed username or signature is rejected.
+     */
+    @Test
+    public void testTamperedToken() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                String token = AuthTokens.issue("savbalac");
+                String[] parts = token.split("\\.");
+                String otherUser = parts[0] + "." + parts[1] + "." + utils.Utils.toHex("admin".getBytes()) + "." + parts[3];
+                assertNull(AuthTokens.verify(otherUser));
+                assertNull(AuthTokens.verify(token.substring(0, token.length() - 1)));
+                assertNull(AuthTokens.verify("not-a-token"));
+            }
+        });
+    }
+
+
+    /**
+     * @verifies That only bearer authorization headers give a token.
+     */
+    @Test
+    public void testFromHeader() {
+        assertEquals("abc", AuthTokens.fromHeader("Bearer abc"));
+        assertNull(AuthTokens.fromHeader("Basic abc"));
+        assertNull(AuthTokens.fromHeader(null));
+    }
+
+
+}
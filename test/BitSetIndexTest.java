@@ -0,0 +1,42 @@
+import org.junit.*;
+import utils.BitSetIndex;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the bitset index used for analyst facet counts.
+ *
+ * Date: 18/10/26
+ * Time: 04:49
+ *
+ * @version     1.0
+ */
+public class BitSetIndexTest {
+
+
+    /**
+     * @verifies That counts follow ids moving between values and respect a selection.
+     */
+    @Test
+    public void testCounts() {
+        BitSetIndex index = new BitSetIndex();
+        index.put(1L, 10L);
+        index.put(2L, 10L);
+        index.put(3L, 20L);
+        index.put(2L, 20L); // Moves from 10 to 20
+        index.remove(1L);
+
+        Map<Long,Integer> counts = index.counts(null);
+        assertNull(counts.get(10L));
+        assertEquals(Integer.valueOf(2), counts.get(20L));
+
+        counts = index.counts(BitSetIndex.of(Arrays.asList(3L)));
+        assertEquals(Integer.valueOf(1), counts.get(20L));
+        assertEquals(2, index.getAny(Arrays.asList(10L, 20L)).cardinality());
+    }
+
+
+}
@@ -0,0 +1,80 @@
+import org.junit.*;
+import utils.CompressionFilter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests which responses the compression filter gzips.
+ *
+ * Date: 18/10/26
+ * Time: 05:31
+ *
+ * @version     1.0
+ */
+public class CompressionFilterTest {
+
+    // Constants
+    private static final String JSON    = "application/json; charset=utf-8";
+    private static final String SIZE    = String.valueOf(CompressionFilter.MIN_SIZE);
+    private static final String SMALL   = String.valueOf(CompressionFilter.MIN_SIZE - 1);
+
+
+    /**
+     * @verifies That responses are compressed from MIN_SIZE bytes, and streamed responses (no length) always.
+     */
+    @Test
+    public void testSizeThreshold() {
+        assertTrue(CompressionFilter.shouldCompress(JSON, null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress(JSON, null, " " + SIZE + " "));
+        assertFalse(CompressionFilter.shouldCompress(JSON, null, SMALL));
+        assertFalse(CompressionFilter.shouldCompress(JSON, null, "0"));
+        assertFalse(CompressionFilter.shouldCompress(JSON, null, "unknown"));
+        assertTrue(CompressionFilter.shouldCompress(JSON, null, null));
+    }
+
+
+    /**
+     * @verifies That only the content types that compress well are compressed, whatever their parameters or case.
+     */
+    @Test
+    public void testContentTypes() {
+        assertTrue(CompressionFilter.shouldCompress("application/json", null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress("text/json", null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress("text/html; charset=utf-8", null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress("Text/CSS", null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress("application/javascript", null, SIZE));
+        assertTrue(CompressionFilter.shouldCompress("text/javascript", null, SIZE));
+        assertFalse(CompressionFilter.shouldCompress("application/x-jackson-smile", null, SIZE));
+        assertFalse(CompressionFilter.shouldCompress("image/png", null, SIZE));
+        assertFalse(CompressionFilter.shouldCompress("application/pdf", null, null));
+        assertFalse(CompressionFilter.shouldCompress(null, null, SIZE));
+    }
+
+
+    /**
+     * @verifies That a response may be compressed when the request accepts gzip (unless with q=0) and the type
+     *           compresses well.
+     */
+    @Test
+    public void testMayCompress() {
+        assertTrue(CompressionFilter.mayCompress(JSON, "gzip"));
+        assertTrue(CompressionFilter.mayCompress(JSON, "deflate, GZIP;q=0.5"));
+        assertTrue(CompressionFilter.mayCompress(JSON, "*"));
+        assertFalse(CompressionFilter.mayCompress(JSON, "gzip;q=0"));
+        assertFalse(CompressionFilter.mayCompress(JSON, "deflate, identity"));
+        assertFalse(CompressionFilter.mayCompress(JSON, null));
+        assertFalse(CompressionFilter.mayCompress("application/x-jackson-smile", "gzip"));
+    }
+
+
+    /**
+     * @verifies That responses that are already encoded aren't compressed again.
+     */
+    @Test
+    public void testAlreadyEncoded() {
+        assertFalse(CompressionFilter.shouldCompress(JSON, "gzip", SIZE));
+        assertFalse(CompressionFilter.shouldCompress(JSON, "deflate", null));
+    }
+
+
+}
@@ -0,0 +1,146 @@
+import org.junit.*;
+import utils.DeflaterPool;
+import utils.GzipEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the gzip encoder and the Deflater pool it borrows from.
+ *
+ * Date: 18/10/26
+ * Time: 05:58
+ *
+ * @version     1.0
+ */
+public class GzipEncoderTest {
+
+    // Constants
+    private static final int BUFFER_SIZE = 1024;
+
+
+    /**
+     * @verifies That a response compressed a chunk at a time is valid gzip, and that compressed chunks are held back
+     *           until there are at least BUFFER_SIZE bytes.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        DeflaterPool pool = new DeflaterPool(2, Deflater.DEFAULT_COMPRESSION);
+        byte[] response = getResponse(100000);
+        GzipEncoder encoder = new GzipEncoder(pool, BUFFER_SIZE);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < response.length; offset += 1000) {
+            byte[] chunk = new byte[Math.min(1000, response.length - offset)];
+            System.arraycopy(response, offset, chunk, 0, chunk.length);
+            byte[] compressed = encoder.compress(chunk);
+            assertTrue(compressed.length == 0 || compressed.length >= BUFFER_SIZE);
+            out.write(compressed);
+        }
+        out.write(encoder.finish());
+        assertArrayEquals(response, gunzip(out.toByteArray()));
+        assertEquals(1, pool.getIdleCount());
+    }
+
+
+    /**
+     * @verifies That an empty response is valid gzip.
+     */
+    @Test
+    public void testEmpty() throws IOException {
+        GzipEncoder encoder = new GzipEncoder(new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE);
+        assertEquals(0, gunzip(encoder.finish()).length);
+    }
+
+
+    /**
+     * @verifies That a Deflater given back to the pool is reset and used again, whether the response was finished or
+     *           released, and that releasing twice gives it back once.
+     */
+    @Test
+    public void testPooling() throws IOException {
+        DeflaterPool pool = new DeflaterPool(1, Deflater.DEFAULT_COMPRESSION);
+        GzipEncoder abandoned = new GzipEncoder(pool, BUFFER_SIZE);
+        abandoned.compress(getResponse(5000));
+        abandoned.release();
+        abandoned.release();
+        assertEquals(1, pool.getIdleCount());
+        try {
+            abandoned.compress(new byte[1]);
+            fail("A released encoder compressed");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        byte[] response = getResponse(5000);
+        GzipEncoder encoder = new GzipEncoder(pool, BUFFER_SIZE);
+        assertEquals(0, pool.getIdleCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(encoder.compress(response));
+        out.write(encoder.finish());
+        assertArrayEquals(response, gunzip(out.toByteArray()));
+        assertEquals(1, pool.getIdleCount());
+    }
+
+
+    /**
+     * @verifies That the pool keeps at most its size of idle Deflaters and creates more when it's empty.
+     */
+    @Test
+    public void testBoundedPool() {
+        DeflaterPool pool = new DeflaterPool(2, Deflater.DEFAULT_COMPRESSION);
+        Deflater first = pool.borrow();
+        Deflater second = pool.borrow();
+        Deflater third = pool.borrow();
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(2, pool.getIdleCount());
+        assertSame(first, pool.borrow());
+    }
+
+
+    /**
+     * Returns a response that's partly repetitive, like JSON, and partly random.
+     *
+     * @param length    The number of bytes.
+     * @return byte[]   The response.
+     */
+    private static byte[] getResponse(int length) {
+        byte[] bytes = new byte[length];
+        Random random = new Random(length);
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (i % 3 == 0) ? ((byte) random.nextInt()) : ((byte) "{\"name\":\"analyst\"}".charAt(i % 18));
+        }
+        return bytes;
+    }
+
+
+    /**
+     * Decompresses gzip with the JDK's decoder.
+     *
+     * @param gzip          The gzip bytes.
+     * @return byte[]       The decompressed bytes.
+     * @throws IOException  If the bytes aren't valid gzip.
+     */
+    private static byte[] gunzip(byte[] gzip) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+
+}
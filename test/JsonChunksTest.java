@@ -0,0 +1,135 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.*;
+import utils.JsonChunks;
+import utils.JsonEncoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that chunked JSON is written a part at a time, only as it's read.
+ *
+ * Date: 18/10/26
+ * Time: 06:12
+ *
+ * @version     1.0
+ */
+public class JsonChunksTest {
+
+    // Constants
+    private static final int PARTS      = 50;
+    private static final int PER_PART   = 100;
+
+
+    /**
+     * @verifies That the parts read back as one JSON document, as text JSON and as Smile.
+     */
+    @Test
+    public void testDocument() throws IOException {
+        for (boolean smile : new boolean[]{false, true}) {
+            Numbers numbers = new Numbers(smile, PARTS);
+            byte[] bytes = readAll(numbers.toStream());
+            JsonNode json = (smile) ? (JsonEncoding.fromSmile(bytes)) : (JsonEncoding.fromJson(bytes));
+            assertEquals(PARTS * PER_PART, json.get("numbers").size());
+            for (int i = 0; i < PARTS * PER_PART; i++) {
+                assertEquals(i, json.get("numbers").get(i).asInt());
+            }
+            assertEquals(PARTS, numbers.written);
+        }
+    }
+
+
+    /**
+     * @verifies That a part is only written once the previous one has been read, and that closing the stream stops
+     *           the writing.
+     */
+    @Test
+    public void testOnDemand() throws IOException {
+        Numbers numbers = new Numbers(false, PARTS);
+        InputStream in = numbers.toStream();
+        assertEquals(0, numbers.written);
+        assertTrue(in.read() >= 0);
+        assertEquals(1, numbers.written);
+        in.close();
+        readAll(in); // The rest of the part already written
+        assertEquals(1, numbers.written);
+    }
+
+
+    /**
+     * @verifies That a part that fails ends the stream, rather than failing the reader.
+     */
+    @Test
+    public void testFailedPart() throws IOException {
+        Numbers numbers = new Numbers(false, PARTS) {
+            @Override
+            protected boolean writeNext(JsonGenerator generator, OutputStream out) throws IOException {
+                if (written == 2) {
+                    throw new IOException("The DB went away");
+                }
+                return super.writeNext(generator, out);
+            }
+        };
+        byte[] bytes = readAll(numbers.toStream());
+        assertTrue(new String(bytes, "UTF-8").startsWith("{\"numbers\":[0,1,2"));
+        assertEquals(2, numbers.written);
+    }
+
+
+    /**
+     * Reads a stream to its end.
+     *
+     * @param in            The stream.
+     * @return byte[]       The bytes read.
+     * @throws IOException  If the stream can't be read.
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Writes {"numbers":[0,1,2...]}, PER_PART numbers at a time.
+     */
+    private static class Numbers extends JsonChunks {
+        private final int   parts;
+        protected int       written;
+
+        Numbers(boolean smile, int parts) {
+            super(smile);
+            this.parts = parts;
+        }
+
+        @Override
+        protected boolean writeNext(JsonGenerator generator, OutputStream out) throws IOException {
+            if (written == 0) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("numbers");
+            }
+            for (int i = 0; i < PER_PART; i++) {
+                generator.writeNumber(written * PER_PART + i);
+            }
+            written++;
+            if (written == parts) {
+                generator.writeEndArray();
+                generator.writeEndObject();
+                return false;
+            }
+            return true;
+        }
+    }
+
+
+}
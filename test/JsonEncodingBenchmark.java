@@ -0,0 +1,59 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import utils.JsonEncoding;
+
+/**
+ * Compares how long Smile and text JSON take to encode and decode a page of analyst-like JSON (see JsonEncodingTest).
+ * It's not a test, as the timings depend on the machine; run it with: play "test:run-main JsonEncodingBenchmark".
+ *
+ * Date: 18/10/26
+ * Time: 05:31
+ *
+ * @version     1.0
+ */
+public class JsonEncodingBenchmark {
+
+    // Constants
+    private static final int WARM_UP    = 200;
+    private static final int RUNS       = 1000;
+
+
+    /**
+     * Prints the size of the page in each encoding and the average time to encode and decode it.
+     *
+     * @param args          Not used.
+     * @throws Exception    If the page can't be decoded.
+     */
+    public static void main(String[] args) throws Exception {
+        JsonNode page = JsonEncodingTest.getPage();
+        for (int i = 0; i < WARM_UP; i++) {
+            JsonEncoding.fromJson(JsonEncoding.toJson(page));
+            JsonEncoding.fromSmile(JsonEncoding.toSmile(page));
+        }
+        byte[] json = null;
+        byte[] smile = null;
+        long jsonEncode = 0, jsonDecode = 0, smileEncode = 0, smileDecode = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            json = JsonEncoding.toJson(page);
+            long encoded = System.nanoTime();
+            JsonEncoding.fromJson(json);
+            long decoded = System.nanoTime();
+            jsonEncode += encoded - start;
+            jsonDecode += decoded - encoded;
+
+            start = System.nanoTime();
+            smile = JsonEncoding.toSmile(page);
+            encoded = System.nanoTime();
+            JsonEncoding.fromSmile(smile);
+            decoded = System.nanoTime();
+            smileEncode += encoded - start;
+            smileDecode += decoded - encoded;
+        }
+        System.out.println(String.format("JSON:  %d bytes, encode %d us, decode %d us",
+                                         json.length, jsonEncode / RUNS / 1000, jsonDecode / RUNS / 1000));
+        System.out.println(String.format("Smile: %d bytes, encode %d us, decode %d us",
+                                         smile.length, smileEncode / RUNS / 1000, smileDecode / RUNS / 1000));
+    }
+
+
+}
@@ -0,0 +1,165 @@
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import utils.JsonEncoding;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests JSON content negotiation and that Smile and text JSON encode a page of analyst-like JSON to the same document.
+ * JsonEncodingBenchmark compares how long each takes.
+ *
+ * Date: 18/10/26
+ * Time: 05:11
+ *
+ * @version     1.0
+ */
+public class JsonEncodingTest {
+
+    // Constants
+    private static final int ANALYSTS   = 100;
+
+
+    /**
+     * @verifies That Smile is only chosen when the Accept header prefers it.
+     */
+    @Test
+    public void testPrefersSmile() {
+        assertTrue(JsonEncoding.prefersSmile(JsonEncoding.SMILE));
+        assertTrue(JsonEncoding.prefersSmile("application/x-jackson-smile, application/json;q=0.9"));
+        assertTrue(JsonEncoding.prefersSmile("application/json;q=0.5, application/x-jackson-smile"));
+        assertFalse(JsonEncoding.prefersSmile(null));
+        assertFalse(JsonEncoding.prefersSmile("application/json"));
+        assertFalse(JsonEncoding.prefersSmile("application/json, application/x-jackson-smile"));
+        assertFalse(JsonEncoding.prefersSmile("application/x-jackson-smile;q=0.5, application/json"));
+        assertFalse(JsonEncoding.prefersSmile("*/*"));
+        assertFalse(JsonEncoding.prefersSmile("text/html,application/xhtml+xml,*/*;q=0.8"));
+    }
+
+
+    /**
+     * @verifies That Smile decodes to the same document as text JSON and is smaller.
+     */
+    @Test
+    public void testSmileAgainstJson() throws Exception {
+        JsonNode page = getPage();
+        byte[] json = JsonEncoding.toJson(page);
+        byte[] smile = JsonEncoding.toSmile(page);
+        assertEquals(page, JsonEncoding.fromJson(json));
+        assertEquals(page, JsonEncoding.fromSmile(smile));
+        assertTrue(smile.length < json.length);
+    }
+
+
+    /**
+     * @verifies That fragments joined into a document, as text JSON or Smile, decode to the same document as
+     * encoding it whole, with and without other fields.
+     */
+    @Test
+    public void testJoin() throws Exception {
+        JsonNode page = getPage();
+        ObjectNode others = ((ObjectNode) page).deepCopy();
+        others.remove("analysts");
+        List<byte[]> json = new ArrayList<byte[]>();
+        List<byte[]> smile = new ArrayList<byte[]>();
+        for (JsonNode analyst : page.get("analysts")) {
+            json.add(JsonEncoding.toJson(analyst));
+            smile.add(JsonEncoding.toSmileFragment(analyst));
+        }
+        assertEquals(page, JsonEncoding.fromJson(JsonEncoding.join(false, "analysts", json, others)));
+        assertEquals(page, JsonEncoding.fromSmile(JsonEncoding.join(true, "analysts", smile, others)));
+
+        ObjectNode none = ((ObjectNode) page).deepCopy();
+        none.removeAll();
+        none.put("analysts", page.get("analysts"));
+        assertEquals(none, JsonEncoding.fromJson(JsonEncoding.join(false, "analysts", json, none.objectNode())));
+        assertEquals(none, JsonEncoding.fromSmile(JsonEncoding.join(true, "analysts", smile, none.objectNode())));
+
+        JsonNode analyst = page.get("analysts").get(0);
+        assertEquals(analyst, JsonEncoding.fromSmile(JsonEncoding.toSmileDocument(smile.get(0))));
+    }
+
+
+    /**
+     * @verifies That fragments appended between a generator's writes, as in a streamed response
+     * (see Analyst.writeJsonBatch), decode to the same document, as text JSON or Smile.
+     */
+    @Test
+    public void testCreateGenerator() throws Exception {
+        JsonNode page = getPage();
+        assertEquals(page, JsonEncoding.fromJson(stream(page, false)));
+        assertEquals(page, JsonEncoding.fromSmile(stream(page, true)));
+    }
+
+
+    /**
+     * Writes a page as a stream would: the outline from the generator and the analysts appended in batches.
+     *
+     * @param page          The page.
+     * @param binary        True for Smile.
+     * @return byte[]       The document.
+     * @throws IOException  If the document can't be written.
+     */
+    private static byte[] stream(JsonNode page, boolean binary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonGenerator generator = JsonEncoding.createGenerator(binary, out);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("analysts");
+        int i = 0;
+        for (JsonNode analyst : page.get("analysts")) {
+            if (i % 3 == 0) { // A new batch
+                generator.flush();
+            }
+            if (!binary && i > 0) {
+                out.write(',');
+            }
+            out.write((binary) ? (JsonEncoding.toSmileFragment(analyst)) : (JsonEncoding.toJson(analyst)));
+            i++;
+        }
+        generator.writeEndArray();
+        generator.writeObjectField("next", page.get("next"));
+        generator.writeEndObject();
+        generator.close();
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Returns a page of analysts shaped like Analyst.getPageAsJson's.
+     *
+     * @return JsonNode  The page.
+     */
+    static JsonNode getPage() {
+        ObjectNode page = JsonNodeFactory.instance.objectNode();
+        ArrayNode analysts = page.putArray("analysts");
+        for (int i = 1; i <= ANALYSTS; i++) {
+            ObjectNode analyst = analysts.addObject();
+            analyst.put("analystId", i);
+            analyst.put("firstname", "First" + i);
+            analyst.put("lastname", "Last" + i);
+            analyst.put("email", "analyst" + i + "@example.com");
+            analyst.put("phoneNo", "0123 456 " + (1000 + i));
+            analyst.put("rank", "Analyst");
+            analyst.put("status", (i % 3 == 0) ? ("Left") : ("Active"));
+            analyst.put("contractDate", "2013-11-" + (10 + i % 20));
+            ArrayNode desks = analyst.putArray("desks");
+            for (int j = 0; j < i % 4; j++) {
+                ObjectNode desk = desks.addObject();
+                desk.put("deskId", j + 1);
+                desk.put("name", "Desk " + (j + 1));
+            }
+        }
+        page.put("next", "/analysts?c=abc" + ANALYSTS);
+        return page;
+    }
+
+
+}
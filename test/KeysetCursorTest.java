@@ -0,0 +1,45 @@
+import org.junit.*;
+import utils.KeysetCursor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the keyset pagination cursors.
+ *
+ * Date: 18/10/26
+ * Time: 04:43
+ *
+ * @version     1.0
+ */
+public class KeysetCursorTest {
+
+
+    /**
+     * @verifies That a cursor round-trips its direction, sort value and id.
+     */
+    @Test
+    public void testRoundTrip() {
+        KeysetCursor after = KeysetCursor.parse(KeysetCursor.after("O'Brien. Ünal", 42L));
+        assertFalse(after.before);
+        assertEquals("O'Brien. Ünal", after.value);
+        assertEquals(Long.valueOf(42L), after.id);
+
+        KeysetCursor before = KeysetCursor.parse(KeysetCursor.before("Smith", 7L));
+        assertTrue(before.before);
+        assertEquals("Smith", before.value);
+    }
+
+
+    /**
+     * @verifies That the start cursor and invalid cursors start from the beginning of the list.
+     */
+    @Test
+    public void testStart() {
+        assertTrue(KeysetCursor.parse(KeysetCursor.START).isStart());
+        assertTrue(KeysetCursor.parse("a.zz.1").isStart());
+        assertTrue(KeysetCursor.parse("a.00.x").isStart());
+        assertTrue(KeysetCursor.parse(null).isStart());
+    }
+
+
+}
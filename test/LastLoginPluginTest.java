@@ -0,0 +1,153 @@
+import org.junit.*;
+import plugins.LastLoginPlugin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the write-behind last login buffer and its batched flush, using connections that record what's written
+ * (or fail) instead of a DB.
+ *
+ * Date: 18/10/26
+ * Time: 05:21
+ *
+ * @version     1.0
+ */
+public class LastLoginPluginTest {
+
+    // Users not in the test DB, so a flush by a running application can't interfere
+    private static final Long USER_A = 900001L;
+    private static final Long USER_B = 900002L;
+
+
+    /**
+     * Writes anything left by a previous test.
+     */
+    @Before
+    public void setUp() {
+        LastLoginPlugin.flush(new FakeConnection(false, null).proxy());
+    }
+
+
+    /**
+     * @verifies That only the latest login per user is kept, and one flush writes them all in one batch.
+     */
+    @Test
+    public void testBatching() throws Exception {
+        LastLoginPlugin.record(USER_A);
+        Thread.sleep(2);
+        LastLoginPlugin.record(USER_A);
+        LastLoginPlugin.record(USER_B);
+        Long latest = LastLoginPlugin.getPending(USER_A);
+
+        FakeConnection connection = new FakeConnection(false, null);
+        LastLoginPlugin.flush(connection.proxy());
+        assertEquals(2, connection.userIds.size());
+        assertTrue(connection.userIds.contains(USER_A));
+        assertTrue(connection.userIds.contains(USER_B));
+        assertEquals(latest, connection.times.get(connection.userIds.indexOf(USER_A)));
+        assertEquals(1, connection.batches);
+        assertTrue(connection.sql.contains("version = version + 1")); // So the users' ETags change
+        assertTrue(connection.closed);
+        assertNull(LastLoginPlugin.getPending(USER_A));
+        assertNull(LastLoginPlugin.getPending(USER_B));
+    }
+
+
+    /**
+     * @verifies That a failed flush puts the logins back, unless the user logged in again meanwhile.
+     */
+    @Test
+    public void testFailedFlush() throws Exception {
+        LastLoginPlugin.record(USER_A);
+        LastLoginPlugin.record(USER_B);
+        Long timeB = LastLoginPlugin.getPending(USER_B);
+        Thread.sleep(2);
+
+        FakeConnection connection = new FakeConnection(true, USER_A); // User A logs in again during the flush
+        LastLoginPlugin.flush(connection.proxy());
+        assertTrue(connection.closed);
+        assertEquals(connection.loginDuringFlush, LastLoginPlugin.getPending(USER_A));
+        assertEquals(timeB, LastLoginPlugin.getPending(USER_B));
+
+        FakeConnection retry = new FakeConnection(false, null);
+        LastLoginPlugin.flush(retry.proxy());
+        assertEquals(2, retry.userIds.size());
+        assertNull(LastLoginPlugin.getPending(USER_A));
+    }
+
+
+    /**
+     * @verifies That a flush with nothing to write writes nothing and still closes the connection.
+     */
+    @Test
+    public void testEmptyFlush() {
+        FakeConnection connection = new FakeConnection(false, null);
+        LastLoginPlugin.flush(connection.proxy());
+        assertEquals(0, connection.batches);
+        assertTrue(connection.closed);
+    }
+
+
+    /**
+     * A connection, and the statements it prepares, that records the batched updates or fails to execute them.
+     */
+    private static class FakeConnection implements InvocationHandler {
+        final boolean       fail;
+        final Long          loginUserId;    // User who logs in while the batch executes (may be null)
+        final List<Long>    userIds = new ArrayList<Long>();
+        final List<Long>    times   = new ArrayList<Long>();
+        int                 batches;
+        boolean             closed;
+        String              sql;
+        Long                loginDuringFlush;
+        private Long        time;
+
+        FakeConnection(boolean fail, Long loginUserId) {
+            this.fail = fail;
+            this.loginUserId = loginUserId;
+        }
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                                                       this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("prepareStatement")) {
+                sql = (String) args[0];
+                return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{PreparedStatement.class},
+                                              this);
+            } else if (name.equals("setTimestamp")) {
+                time = ((java.sql.Timestamp) args[1]).getTime();
+            } else if (name.equals("setLong")) {
+                userIds.add((Long) args[1]);
+                times.add(time);
+            } else if (name.equals("executeBatch")) {
+                if (loginUserId != null) {
+                    LastLoginPlugin.record(loginUserId);
+                    loginDuringFlush = LastLoginPlugin.getPending(loginUserId);
+                }
+                if (fail) {
+                    throw new SQLException("Connection lost");
+                }
+                batches++;
+                return new int[userIds.size()];
+            } else if (name.equals("close") && method.getDeclaringClass() == Connection.class) {
+                closed = true;
+            }
+            return null;
+        }
+    }
+
+
+}
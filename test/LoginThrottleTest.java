@@ -0,0 +1,48 @@
+import org.junit.*;
+import utils.LoginThrottle;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the sign-in throttle's per-username and per-address limits.
+ *
+ * Date: 18/10/26
+ * Time: 05:20
+ *
+ * @version     1.0
+ */
+public class LoginThrottleTest {
+
+
+    /**
+     * @verifies That attempts rejected for the username don't use up the address's tokens.
+     */
+    @Test
+    public void testUsernameRejectionKeepsAddressTokens() {
+        String username = "throttled-user";
+        for (int i = 0; i < 5; i++) {
+            assertTrue(LoginThrottle.allow(username, "10.0.1." + i));
+        }
+        for (int i = 0; i < 30; i++) {
+            assertFalse(LoginThrottle.allow(username, "10.0.2.1"));
+        }
+        for (int i = 0; i < 20; i++) { // The address still has its whole burst
+            assertTrue(LoginThrottle.allow("other-user-" + i, "10.0.2.1"));
+        }
+        assertFalse(LoginThrottle.allow("other-user-20", "10.0.2.1"));
+    }
+
+
+    /**
+     * @verifies That a successful attempt gives its tokens back.
+     */
+    @Test
+    public void testSucceeded() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(LoginThrottle.allow("good-user", "10.0.3.1"));
+            LoginThrottle.succeeded("good-user", "10.0.3.1");
+        }
+    }
+
+
+}
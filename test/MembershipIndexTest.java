@@ -0,0 +1,41 @@
+import org.junit.*;
+import utils.MembershipIndex;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the membership index used for the user list's group filter.
+ *
+ * Date: 18/10/26
+ * Time: 04:55
+ *
+ * @version     1.0
+ */
+public class MembershipIndexTest {
+
+
+    /**
+     * @verifies That members follow groups being added and removed, in either direction.
+     */
+    @Test
+    public void testMemberships() {
+        MembershipIndex index = new MembershipIndex();
+        index.add(1L, 20L);
+        index.add(1L, 10L);
+        index.add(1L, 10L); // Already a member
+        index.add(2L, 10L);
+        assertArrayEquals(new long[] {10L, 20L}, index.getMemberGroups(1L));
+        assertEquals(2, index.getMembers(10L).cardinality());
+
+        index.remove(1L, 10L);
+        assertFalse(index.getMembers(10L).get(1));
+        assertArrayEquals(new long[] {20L}, index.getMemberGroups(1L));
+
+        index.removeMember(1L);
+        assertTrue(index.getMembers(20L).isEmpty());
+        assertEquals(0, index.getMemberGroups(1L).length);
+        assertTrue(index.getMembers(10L).get(2));
+    }
+
+
+}
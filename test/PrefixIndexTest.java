@@ -0,0 +1,52 @@
+import org.junit.*;
+import utils.PrefixIndex;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the prefix index used for name autocomplete.
+ *
+ * Date: 18/10/26
+ * Time: 04:47
+ *
+ * @version     1.0
+ */
+public class PrefixIndexTest {
+
+
+    /**
+     * @verifies That items are found by any key's prefix, once each, in key order and up to the limit.
+     */
+    @Test
+    public void testSearch() {
+        PrefixIndex<String> index = new PrefixIndex<String>();
+        index.put(1L, "Sav Balac", "Sav", "Balac", "Sav Balac");
+        index.put(2L, "Anna Balsamo", "Anna", "Balsamo", "Anna Balsamo");
+        index.put(3L, "Sam Smith", "Sam", "Smith", "Sam Smith");
+
+        assertEquals(Arrays.asList("Sav Balac", "Anna Balsamo"), index.search("BAL", 10));
+        assertEquals(Arrays.asList("Sam Smith", "Sav Balac"), index.search("sa", 10));
+        assertEquals(Arrays.asList("Sam Smith"), index.search("s", 1));
+        assertTrue(index.search("", 10).isEmpty());
+    }
+
+
+    /**
+     * @verifies That renaming and removing items updates the keys.
+     */
+    @Test
+    public void testUpdate() {
+        PrefixIndex<String> index = new PrefixIndex<String>();
+        index.put(1L, "Sam Smith", "Sam", "Smith");
+        index.put(1L, "Sam Jones", "Sam", "Jones");
+        assertTrue(index.search("smi", 10).isEmpty());
+        assertEquals(Arrays.asList("Sam Jones"), index.search("jo", 10));
+        index.remove(1L);
+        assertTrue(index.search("sam", 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+
+}
@@ -0,0 +1,111 @@
+import org.junit.*;
+import utils.RateLimiter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the token bucket rate limiter used to throttle sign-in attempts.
+ *
+ * Date: 18/10/26
+ * Time: 04:38
+ *
+ * @version     1.0
+ */
+public class RateLimiterTest {
+
+
+    /**
+     * @verifies That a key is limited to its burst capacity and that buckets are independent.
+     */
+    @Test
+    public void testBurstCapacity() {
+        RateLimiter limiter = new RateLimiter(5, 5, 100);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire("savbalac"));
+        }
+        assertFalse(limiter.tryAcquire("savbalac"));
+        assertTrue(limiter.tryAcquire("another"));
+    }
+
+
+    /**
+     * @verifies That a released token can be used again.
+     */
+    @Test
+    public void testRelease() {
+        RateLimiter limiter = new RateLimiter(1, 1, 100);
+        assertTrue(limiter.tryAcquire("savbalac"));
+        assertFalse(limiter.tryAcquire("savbalac"));
+        limiter.release("savbalac");
+        assertTrue(limiter.tryAcquire("savbalac"));
+    }
+
+
+    /**
+     * @verifies That the number of buckets stays bounded when many keys are tried, with one stripe or many.
+     */
+    @Test
+    public void testBoundedKeys() {
+        RateLimiter limiter = new RateLimiter(2, 1, 10, 1);
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("user" + i);
+        }
+        assertEquals(10, limiter.size());
+
+        RateLimiter striped = new RateLimiter(2, 1, 1000);
+        for (int i = 0; i < 100000; i++) {
+            striped.tryAcquire("10.0." + (i / 256) + "." + (i % 256));
+        }
+        assertTrue(striped.size() <= 1000);
+        assertTrue(striped.size() >= 1000 - RateLimiter.DEFAULT_STRIPES); // Every stripe is full
+    }
+
+
+    /**
+     * @verifies That when the limiter is full a new key gets its own bucket, not one shared with other new keys.
+     */
+    @Test
+    public void testFullLimiter() {
+        RateLimiter limiter = new RateLimiter(1, 1, 10, 1);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("user" + i));
+        }
+        assertTrue(limiter.tryAcquire("new1"));
+        assertTrue(limiter.tryAcquire("new2")); // Would share new1's empty bucket if new keys overflowed
+        assertFalse(limiter.tryAcquire("new2"));
+        assertEquals(10, limiter.size());
+    }
+
+
+    /**
+     * @verifies That the least recently used bucket (in a stripe) is the one removed.
+     */
+    @Test
+    public void testEviction() {
+        RateLimiter limiter = new RateLimiter(1, 1, 2, 1);
+        assertTrue(limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("b"));
+        assertFalse(limiter.tryAcquire("a")); // Uses a, so b is now least recently used
+        assertTrue(limiter.tryAcquire("c"));  // Removes b
+        assertFalse(limiter.isAllowed("a"));
+        assertFalse(limiter.isAllowed("c"));
+        assertTrue(limiter.isAllowed("b"));   // Removed, so full again
+        assertTrue(limiter.tryAcquire("b"));  // Removes a
+        assertTrue(limiter.isAllowed("a"));
+    }
+
+
+    /**
+     * @verifies That checking a key takes no token and adds no bucket.
+     */
+    @Test
+    public void testIsAllowed() {
+        RateLimiter limiter = new RateLimiter(1, 1, 10);
+        assertTrue(limiter.isAllowed("savbalac"));
+        assertEquals(0, limiter.size());
+        assertTrue(limiter.tryAcquire("savbalac"));
+        assertFalse(limiter.isAllowed("savbalac"));
+    }
+
+
+}
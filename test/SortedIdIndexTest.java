@@ -0,0 +1,85 @@
+import org.junit.*;
+import utils.BitSetIndex;
+import utils.SortedIdIndex;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the sorted id index used for sorted analyst list pages.
+ *
+ * Date: 18/10/26
+ * Time: 04:54
+ *
+ * @version     1.0
+ */
+public class SortedIdIndexTest {
+
+
+    /**
+     * @verifies That ids are ordered by value ignoring case (nulls first), then by id, and follow changes.
+     */
+    @Test
+    public void testOrder() {
+        SortedIdIndex index = new SortedIdIndex();
+        index.put(1L, "Energy");
+        index.put(2L, "agriculture");
+        index.put(3L, null);
+        index.put(4L, "Energy");
+        assertEquals(Arrays.asList(3L, 2L, 1L, 4L), index.slice(null, true, 0, 10));
+        assertEquals(Arrays.asList(4L, 1L, 2L, 3L), index.slice(null, false, 0, 10));
+
+        index.put(2L, "Metals"); // Moves to the end
+        index.remove(3L);
+        assertEquals(Arrays.asList(1L, 4L, 2L), index.slice(null, true, 0, 10));
+        assertEquals(3, index.size());
+    }
+
+
+    /**
+     * @verifies That a slice skips the offset and only includes selected ids.
+     */
+    @Test
+    public void testSlice() {
+        SortedIdIndex index = new SortedIdIndex();
+        for (long id = 1; id <= 10; id++) {
+            index.put(id, "Desk " + (char) ('a' + (10 - id))); // Reverse order of id
+        }
+        assertEquals(Arrays.asList(8L, 7L), index.slice(null, true, 2, 2));
+        assertEquals(Arrays.asList(3L, 4L), index.slice(null, false, 2, 2));
+        assertEquals(Arrays.asList(2L), index.slice(BitSetIndex.of(Arrays.asList(2L, 5L, 9L)), true, 2, 5));
+        assertTrue(index.slice(null, true, 20, 5).isEmpty());
+    }
+
+
+
+    /**
+     * @verifies That a keyset page starts next to the cursor's position, either side and in either order, even if
+     *           the position's id has moved.
+     */
+    @Test
+    public void testSeek() {
+        SortedIdIndex index = new SortedIdIndex();
+        for (long id = 1; id <= 10; id++) {
+            index.put(id, (id % 2 == 0) ? ("Energy") : ("metals")); // 2, 4 .. 10 then 1, 3 .. 9
+        }
+        index.put(11L, null);
+        assertEquals(Arrays.asList(11L, 2L, 4L), index.seek(null, true, false, null, null, 3));
+        assertEquals(Arrays.asList(8L, 10L, 1L), index.seek(null, true, false, "energy", 6L, 3));
+        assertEquals(Arrays.asList(4L, 2L, 11L), index.seek(null, true, true, "Energy", 6L, 5));
+        assertEquals(Arrays.asList(9L, 7L), index.seek(null, false, false, null, null, 2));
+        assertEquals(Arrays.asList(10L, 8L), index.seek(null, false, false, "Metals", 1L, 2));
+        assertEquals(Arrays.asList(3L, 5L), index.seek(null, false, true, "Metals", 1L, 2));
+        assertEquals(Arrays.asList(2L), index.seek(null, true, false, "", 11L, 1)); // Empty is the same as null
+
+        index.put(6L, "Metals"); // The cursor's row has moved, so the page starts where it was
+        assertEquals(Arrays.asList(8L, 10L), index.seek(null, true, false, "Energy", 6L, 2));
+
+        assertEquals(Arrays.asList(10L, 3L, 9L),
+                     index.seek(BitSetIndex.of(Arrays.asList(3L, 9L, 10L, 11L)), true, false, "Energy", 4L, 5));
+        assertTrue(index.seek(null, true, false, "Metals", 9L, 5).isEmpty());
+    }
+
+
+}
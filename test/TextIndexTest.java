@@ -0,0 +1,53 @@
+import org.junit.*;
+import utils.TextIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the in-memory full-text index used to search analyst profiles.
+ *
+ * Date: 18/10/26
+ * Time: 04:45
+ *
+ * @version     1.0
+ */
+public class TextIndexTest {
+
+
+    /**
+     * @verifies That every query word must match and that the more relevant document ranks first.
+     */
+    @Test
+    public void testSearch() {
+        TextIndex index = new TextIndex();
+        index.put(1L, "Energy analyst covering Russia", "Oil and gas, Russia and Ukraine.");
+        index.put(2L, "Energy markets", "Energy prices and energy policy.");
+        index.put(3L, "Politics", null);
+
+        assertEquals(Arrays.asList(2L, 1L), index.search("ENERGY")); // More occurrences in a shorter document
+        assertEquals(Arrays.asList(1L), index.search("energy russia"));
+        assertEquals(Collections.<Long>emptyList(), index.search("energy china"));
+        assertEquals(Collections.<Long>emptyList(), index.search("the and"));
+    }
+
+
+    /**
+     * @verifies That replacing and removing documents updates the postings.
+     */
+    @Test
+    public void testUpdate() {
+        TextIndex index = new TextIndex();
+        index.put(1L, "Energy");
+        index.put(1L, "Defence");
+        assertTrue(index.search("energy").isEmpty());
+        assertEquals(Arrays.asList(1L), index.search("defence"));
+        index.remove(1L);
+        assertTrue(index.search("defence").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+
+}
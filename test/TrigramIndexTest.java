@@ -0,0 +1,55 @@
+import org.junit.*;
+import utils.TrigramIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the trigram index used for substring searches on names.
+ *
+ * Date: 18/10/26
+ * Time: 04:47
+ *
+ * @version     1.0
+ */
+public class TrigramIndexTest {
+
+
+    /**
+     * @verifies That substrings of any length match, ignoring case, and that non-adjacent trigrams don't.
+     */
+    @Test
+    public void testSearch() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "Sav Balac");
+        index.put(2L, "Anna Balsamo");
+        index.put(3L, "Tom Smith");
+        index.put(4L, "Abc Bcd");
+
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L)), index.search("BAL"));
+        assertEquals(new HashSet<Long>(Arrays.asList(1L)), index.search("v bal"));
+        assertEquals(new HashSet<Long>(Arrays.asList(2L, 3L)), index.search("m"));
+        assertEquals(Collections.<Long>emptySet(), index.search("abcd")); // Has both trigrams, but not adjacent
+    }
+
+
+    /**
+     * @verifies That replacing and removing texts updates the postings.
+     */
+    @Test
+    public void testUpdate() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1L, "Tom Smith");
+        index.put(1L, "Tom Jones");
+        assertTrue(index.search("smith").isEmpty());
+        assertEquals(new HashSet<Long>(Arrays.asList(1L)), index.search("jones"));
+        index.remove(1L);
+        assertTrue(index.search("jones").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+
+}
@@ -4,6 +4,8 @@ import org.junit.Before;
 import org.junit.Test;
 import play.libs.WS;
 import play.mvc.Result;
+import play.test.FakeRequest;
+import plugins.LastLoginPlugin;
 
 import static org.junit.Assert.*;
 import static org.fest.assertions.Assertions.assertThat;
@@ -49,6 +51,69 @@ public class UsersTest {
     }
 
 
+    /**
+     * @verifies That an unknown sort column or order in the list page's query string falls back to the default sort
+     * instead of reaching the SQL.
+     */
+    @Test
+    public void testListUsersInvalidSort() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                Result res = route(fakeRequest("GET", "/users?s=fullname%3Bdelete%20from%20user&o=sideways")
+                        .withSession("message", "SNO2")
+                        .withSession("username", "savbalac"));
+                assertEquals(OK, status(res));
+                assertNotNull(User.find.byId(1L));
+            }
+        });
+    }
+
+
+    /**
+     * @verifies That a user's JSON is answered with 304 Not Modified when If-None-Match has its ETag, and that
+     * a write to the user (here a flushed login) changes the ETag.
+     */
+    @Test
+    public void testUserETag() {
+        running(fakeApplication(), new Runnable() {
+            public void run() {
+                Result res = getUser(null);
+                assertEquals(OK, status(res));
+                String etag = header(ETAG, res);
+                assertNotNull(etag);
+                assertFalse(etag.startsWith("W/")); // Strong, and without -gzip as gzip isn't accepted
+
+                res = getUser(etag);
+                assertEquals(NOT_MODIFIED, status(res));
+                assertEquals(etag, header(ETAG, res));
+
+                LastLoginPlugin.record(1L);
+                LastLoginPlugin.flush();
+                res = getUser(etag);
+                assertEquals(OK, status(res));
+                assertFalse(etag.equals(header(ETAG, res)));
+            }
+        });
+    }
+
+
+    /**
+     * Gets user 1 as JSON.
+     *
+     * @param etag     The ETag of the client's copy (null for none).
+     * @return Result  The result.
+     */
+    private static Result getUser(String etag) {
+        FakeRequest request = fakeRequest("GET", "/users/1")
+                .withHeader(ACCEPT, "application/json")
+                .withSession("username", "savbalac");
+        if (etag != null) {
+            request = request.withHeader(IF_NONE_MATCH, etag);
+        }
+        return route(request);
+    }
+
+
     /**
      * @verifies That the real HTTP stack is running and that the list users page is displayed.
      */